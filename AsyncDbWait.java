@@ -0,0 +1,280 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Database waits that do not park the calling thread, so thousands of waits can be in flight at once and combined
+ * with {@link CompletableFuture#allOf} / {@link CompletableFuture#anyOf}.
+ * <p>
+ * A small shared scheduler only keeps time: when a poll is due it hands the check to a separate pool of check
+ * threads, {@value #DEFAULT_CHECK_THREADS} by default ({@code dbwait.async.checkThreads}). Checks are blocking
+ * JDBC queries and may also wait for a pooled connection, so they run there and never hold up poll schedules,
+ * timeouts or wake-ups. At most that many checks run at once; further due checks queue for a thread.
+ * <p>
+ * Governed waits ({@link #waitUntilGoverned}) queue for their {@link DbLoadGovernor} permit before they are handed
+ * to a check thread, so polls held back by the governor never occupy one.
+ */
+public final class AsyncDbWait {
+
+    public static final String CHECK_THREADS_PROPERTY = "dbwait.async.checkThreads";
+    public static final int DEFAULT_CHECK_THREADS = 16;
+
+    private static final int SCHEDULER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newScheduledThreadPool(SCHEDULER_THREADS, new DaemonThreadFactory("db-wait-"));
+    private static final ThreadPoolExecutor CHECKS = newCheckExecutor();
+
+    private AsyncDbWait() {
+    }
+
+    /**
+     * Polls {@code check} until it returns true or {@code timeout} elapses.
+     *
+     * @param check         condition to poll; runs on a check thread, so it may block on JDBC
+     * @param timeout       maximum time to wait
+     * @param pollStrategy  delay between polls
+     * @return future completing with true when the condition was met, false on timeout, or exceptionally
+     *         if the condition throws. Cancelling the future stops further polls.
+     */
+    public static CompletableFuture<Boolean> waitUntil(Callable<Boolean> check, Duration timeout, PollStrategy pollStrategy) {
+        return waitUntil(check, timeout, pollStrategy, null);
+    }
+
+    /**
+     * Same as {@link #waitUntil(Callable, Duration, PollStrategy)}, but also re-checks immediately whenever a change
+     * for {@code notificationTopic} is published to {@link ChangeNotificationHub}. The poll schedule stays in place
+     * as the fallback for missed events.
+     *
+     * @param notificationTopic  row to listen for, from {@link ChangeNotificationHub#topic}, or null to rely on
+     *                           polling alone
+     */
+    public static CompletableFuture<Boolean> waitUntil(Callable<Boolean> check, Duration timeout, PollStrategy pollStrategy,
+                                                       String notificationTopic) {
+        return start(new Poll(check, null, System.currentTimeMillis() + timeout.toMillis(), pollStrategy),
+                notificationTopic);
+    }
+
+    /**
+     * Same as {@link #waitUntil(Callable, Duration, PollStrategy, String)}, but every check holds a
+     * {@link DbLoadGovernor} permit for {@code dataSource}. The permit is queued for without a thread, and the check
+     * only goes to a check thread once it is granted. Completes with false at the deadline even if the last
+     * permit request is still queued.
+     */
+    public static CompletableFuture<Boolean> waitUntilGoverned(String dataSource, Callable<Boolean> check, Duration timeout,
+                                                               PollStrategy pollStrategy, String notificationTopic) {
+        return waitUntilGoverned(() -> dataSource, check, timeout, pollStrategy, notificationTopic);
+    }
+
+    /**
+     * Governed wait whose data source is looked up before every poll, for checks that pick where to run (see
+     * {@link ReplicaRouter}) or whose name is only known once connected.
+     */
+    static CompletableFuture<Boolean> waitUntilGoverned(Callable<String> dataSource, Callable<Boolean> check,
+                                                        Duration timeout, PollStrategy pollStrategy,
+                                                        String notificationTopic) {
+        Poll poll = new Poll(check, dataSource, System.currentTimeMillis() + timeout.toMillis(), pollStrategy);
+        ScheduledFuture<?> timeoutTask = SCHEDULER.schedule(poll::expireQueued, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        poll.result.whenComplete((found, error) -> timeoutTask.cancel(false));
+        return start(poll, notificationTopic);
+    }
+
+    private static CompletableFuture<Boolean> start(Poll poll, String notificationTopic) {
+        if (notificationTopic != null && ChangeNotificationHub.isActive()) {
+            ChangeNotificationHub.Subscription subscription = ChangeNotificationHub.subscribe(notificationTopic, poll::wakeUp);
+            poll.result.whenComplete((found, error) -> subscription.close());
+        }
+        poll.result.whenComplete((found, error) -> poll.cancelQueued());
+        poll.due();
+        return poll.result;
+    }
+
+    /**
+     * Timer thread pool; tasks run on it must not block.
+     */
+    static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * Check threads, for blocking work started by the scheduler.
+     */
+    static Executor checkExecutor() {
+        return CHECKS;
+    }
+
+    /**
+     * Runs the blocking {@code task} on a check thread every {@code delay}; a run is skipped while the previous one
+     * is still going. Cancel the returned future to stop it.
+     */
+    static ScheduledFuture<?> scheduleBlocking(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        AtomicBoolean running = new AtomicBoolean();
+        return SCHEDULER.scheduleWithFixedDelay(() -> {
+            if (running.compareAndSet(false, true)) {
+                CHECKS.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    private static ThreadPoolExecutor newCheckExecutor() {
+        int threads = Integer.getInteger(CHECK_THREADS_PROPERTY, DEFAULT_CHECK_THREADS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("db-wait-check-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Poll implements Runnable {
+
+        private final Callable<Boolean> check;
+        private final Callable<String> dataSource; // null when not governed
+        private final long deadlineMillis;
+        private final PollStrategy pollStrategy;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private int attempt;
+        private ScheduledFuture<?> nextPoll; // guarded by this
+        private CompletableFuture<DbLoadGovernor.Permit> queuedPermit; // guarded by this
+        private volatile boolean changed;
+
+        private Poll(Callable<Boolean> check, Callable<String> dataSource, long deadlineMillis, PollStrategy pollStrategy) {
+            this.check = check;
+            this.dataSource = dataSource;
+            this.deadlineMillis = deadlineMillis;
+            this.pollStrategy = pollStrategy;
+        }
+
+        /**
+         * Hands the check to a check thread, once it holds a permit if the wait is governed. Never blocks.
+         */
+        private void due() {
+            if (result.isDone()) {
+                return;
+            }
+            if (dataSource == null) {
+                CHECKS.execute(this);
+                return;
+            }
+            CompletableFuture<DbLoadGovernor.Permit> permit;
+            try {
+                permit = DbLoadGovernor.acquireAsync(dataSource.call(), deadlineMillis);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            synchronized (this) {
+                queuedPermit = permit;
+            }
+            permit.thenAccept(granted -> {
+                synchronized (this) {
+                    queuedPermit = null;
+                }
+                CHECKS.execute(() -> {
+                    try {
+                        run();
+                    } finally {
+                        granted.close();
+                    }
+                });
+            });
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return; // Cancelled by the caller
+            }
+            changed = false;
+            try {
+                if (Boolean.TRUE.equals(check.call())) {
+                    result.complete(true);
+                    return;
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            long remaining = deadlineMillis - System.currentTimeMillis();
+            if (remaining <= 0) {
+                result.complete(false);
+                return;
+            }
+            // A change published while this check was running may not have been visible to it yet
+            long delay = changed ? 0 : Math.min(pollStrategy.nextDelay(++attempt).toMillis(), remaining);
+            synchronized (this) {
+                nextPoll = SCHEDULER.schedule(this::due, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Pulls the next scheduled poll forward to now.
+         */
+        private void wakeUp() {
+            changed = true;
+            synchronized (this) {
+                if (nextPoll == null || !nextPoll.cancel(false)) {
+                    return; // A check is running or queued (and will see the flag) or the wait is over
+                }
+                nextPoll = null;
+            }
+            due();
+        }
+
+        /**
+         * At the deadline: ends the wait if its poll is still queued for a permit. A running check finishes first.
+         */
+        private void expireQueued() {
+            CompletableFuture<DbLoadGovernor.Permit> permit;
+            synchronized (this) {
+                permit = queuedPermit;
+            }
+            if (permit != null && permit.cancel(false)) {
+                result.complete(false);
+            }
+        }
+
+        private void cancelQueued() {
+            CompletableFuture<DbLoadGovernor.Permit> permit;
+            synchronized (this) {
+                permit = queuedPermit;
+            }
+            if (permit != null) {
+                permit.cancel(false);
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true); // Never keep the test JVM alive
+            return thread;
+        }
+    }
+}
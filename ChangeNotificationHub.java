@@ -0,0 +1,81 @@
+package org.example;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out of "row changed" events to waiting polls.
+ * Sources such as {@link OutboxChangeListener} or {@link PgNotifyListener} publish the table and key of every
+ * row that was committed; waits subscribed to that row's {@link #topic} re-check the database right away instead
+ * of sleeping out their poll interval. A change to ORDERS 42 does not wake a wait on USERS 42. Events carry no data, so a spurious or missed event only costs a query or a
+ * regular poll.
+ */
+public final class ChangeNotificationHub {
+
+    private static final ConcurrentMap<String, Set<Runnable>> SUBSCRIBERS = new ConcurrentHashMap<>();
+    private static final AtomicInteger ACTIVE_SOURCES = new AtomicInteger();
+
+    private ChangeNotificationHub() {
+    }
+
+    /**
+     * Topic for changes to the row keyed {@code key} in {@code table}. Table names match case-insensitively and
+     * without quotes or a schema prefix, as sources report them.
+     */
+    public static String topic(String table, String key) {
+        String name = table.replace("\"", "");
+        name = name.substring(name.lastIndexOf('.') + 1);
+        return name.toUpperCase(Locale.ROOT) + '\0' + key;
+    }
+
+    /**
+     * Runs {@code onChange} every time a change for {@code topic} is published, until the subscription is closed.
+     */
+    public static Subscription subscribe(String topic, Runnable onChange) {
+        SUBSCRIBERS.computeIfAbsent(topic, k -> ConcurrentHashMap.newKeySet()).add(onChange);
+        return () -> SUBSCRIBERS.computeIfPresent(topic, (k, subscribers) -> {
+            subscribers.remove(onChange);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * Wakes every wait subscribed to the row keyed {@code key} in {@code table}. Must only be called once the
+     * change is committed.
+     */
+    public static void publish(String table, String key) {
+        Set<Runnable> subscribers = SUBSCRIBERS.get(topic(table, key));
+        if (subscribers != null) {
+            for (Runnable subscriber : subscribers) {
+                subscriber.run();
+            }
+        }
+    }
+
+    /**
+     * True while at least one notification source is running; waits only subscribe when it is.
+     */
+    public static boolean isActive() {
+        return ACTIVE_SOURCES.get() > 0;
+    }
+
+    static void sourceStarted() {
+        ACTIVE_SOURCES.incrementAndGet();
+    }
+
+    static void sourceStopped() {
+        ACTIVE_SOURCES.decrementAndGet();
+    }
+
+    /**
+     * Handle returned by {@link #subscribe(String, Runnable)}.
+     */
+    @FunctionalInterface
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
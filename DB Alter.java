@@ -1,30 +1,20 @@
 public void alterClientDetailsTableColumn(String alterCmd) throws SQLException {
-    String sql = "ROLLBACK_CLNT_COLUMN";
-    boolean altered = false;
+    try (Connection conn = PdmDbsManager.getInstance().getDataSource(rdrConfig).getConnection()) {
+        // This worker's own copy of CLIENT_DETAILS (e.g. CLIENT_DETAILS_W2), so tests running in parallel never see
+        // the altered column; helper queries on this thread that name CLIENT_DETAILS read the copy. The copy has no
+        // indexes or constraints, so this checks the code against the new column, not the ALTER on the real table
+        String clientDetails = WorkerNamespace.isolateTable(conn, "CLIENT_DETAILS");
+        try (Statement stmt = conn.createStatement()) {
 
-    try (Connection conn = PdmDbsManager.getInstance().getDataSource(rdrConfig).getConnection();
-         Statement stmt = conn.createStatement()) {
-
-        if (alterCmd.equalsIgnoreCase("ALTER")) {
-            sql = "ALTER_CLNT_COLUMN";
-            stmt.executeUpdate(sql);
-            altered = true;
-        }
+            if (alterCmd.equalsIgnoreCase("ALTER")) {
+                // No undo: the altered copy is dropped on release
+                stmt.executeUpdate(WorkerNamespace.rewrite("ALTER_CLNT_COLUMN"));
+            }
 
-        // Additional test logic can go here...
+            // Additional test logic can go here, on conn...
 
-    } catch (Exception e) {
-        System.err.println("Error during alter operation: " + e.getMessage());
-        // Handle or rethrow if needed
-    } finally {
-        // Always rollback if alteration was made
-        if (altered) {
-            try (Connection conn = PdmDbsManager.getInstance().getDataSource(rdrConfig).getConnection();
-                 Statement stmt = conn.createStatement()) {
-                stmt.executeUpdate("ROLLBACK_CLNT_COLUMN");
-            } catch (SQLException rollbackEx) {
-                System.err.println("Rollback failed: " + rollbackEx.getMessage());
-            }
+        } finally {
+            WorkerNamespace.release(conn);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,26 +1,36 @@
+private static final PollStrategy ENCRYPTION_POLL_STRATEGY =
+        PollStrategy.fastStartThenDecay(Duration.ofMillis(100), 5, Duration.ofMillis(2000));
+
 public void validateClientEncryption(String clientId, List<String> keyType) throws SQLException {
     String respClientId = "";
     String respKeyType = "";
+    StreamingRowValidator validator = StreamingRowValidator.builder(SELECT_CLNT_ENCRYPT_DTL_SQL)
+            .capture("CLNT_ID", "KEY_TYPE")
+            .build();
     try (Connection conn = PdmDbDsManager.getInstance().getDataSource(rdrConfig).getConnection()) {
-        PreparedStatement ps = conn.prepareStatement(SELECT_CLNT_ENCRYPT_DTL_SQL);
-        ps.setString(parameterIndex: 1, clientId);
 
         // Use Awaitility to poll for the database entry
-        ResultSet[] resultSet = new ResultSet[1]; // Array to hold the ResultSet for use in lambda
+        StreamingRowValidator.Result[] result = new StreamingRowValidator.Result[1]; // Holds the closed, immutable result for use in lambda
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(SELECT_CLNT_ENCRYPT_DTL_SQL).on(dataSource);
+        long deadlineMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
         Awaitility.await()
                 .atMost(30, TimeUnit.SECONDS) // Maximum wait time of 30 seconds
-                .pollInterval(2, TimeUnit.SECONDS) // Poll every 2 seconds
-                .until(() -> {
-                    resultSet[0] = ps.executeQuery(); // Execute the query
-                    return resultSet[0].next(); // Return true if a record is found
-                });
+                .pollDelay(Duration.ZERO) // First check right away
+                .pollInterval((pollCount, previous) -> ENCRYPTION_POLL_STRATEGY.nextDelay(pollCount)) // 100 ms at first, backing off to 2 seconds
+                .ignoreException(TimeoutException.class) // Still queued for a query permit at the deadline: a timeout
+                .until(metrics.timed(DbLoadGovernor.governed(dataSource, deadlineMillis, () -> {
+                    result[0] = validator.validate(conn, clientId); // Execute the query, closing it before returning
+                    return result[0].matched(); // Return true if a record is found
+                })));
+        metrics.finish(true);
 
         // If we reach here, the data is found
-        respClientId = resultSet[0].getString(columnLabel: "CLNT_ID");
+        respClientId = result[0].value("CLNT_ID");
         AonAssert.assertEquals(respClientId, clientId,
                 message: "Validating Encryption Details for the onboarded clientId in the " +
                         "Client Encryption Details table");
-        respKeyType = resultSet[0].getString(columnLabel: "KEY_TYPE");
+        respKeyType = result[0].value("KEY_TYPE");
         AonAssert.assertTrue(keyType.contains(respKeyType),
                 message: "Validating Key Status in the 'Client Encryption Details'");
         Logger.info("Expected Encryption key types: {} found for clientId: {} in the 'Client Encryption Details' table",
@@ -36,12 +46,15 @@ public void validateClientEncryption(String clientId, List<String> keyType) thro
 try {
     Awaitility.await()
         .atMost(30, TimeUnit.SECONDS)
-        .pollInterval(2, TimeUnit.SECONDS)
-        .until(() -> {
-            resultSet[0] = ps.executeQuery();
-            return resultSet[0].next();
-        });
+        .pollDelay(Duration.ZERO)
+        .pollInterval((pollCount, previous) -> ENCRYPTION_POLL_STRATEGY.nextDelay(pollCount))
+        .ignoreException(TimeoutException.class)
+        .until(metrics.timed(DbLoadGovernor.governed(dataSource, deadlineMillis, () -> {
+            result[0] = validator.validate(conn, clientId);
+            return result[0].matched();
+        })));
 } catch (org.awaitility.core.ConditionTimeoutException e) {
+    metrics.finish(false);
     throw new SQLException("TIMEOUT: Entry not found in database after waiting for 30 seconds", e);
 }
 
@@ -54,41 +67,32 @@ using jdk 8
 
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 
 public void validateClientEncryption(String clientId, java.util.List<String> keyType) throws SQLException {
-    String respClientId = "";
-    String respKeyType = "";
+    StreamingRowValidator validator = StreamingRowValidator.builder(SELECT_CLNT_ENCRYPT_DTL_SQL)
+            .capture("CLNT_ID", "KEY_TYPE")
+            .build();
     try (Connection conn = PdmDbDsManager.getInstance().getDataSource(rdrConfig).getConnection()) {
-        PreparedStatement ps = conn.prepareStatement(SELECT_CLNT_ENCRYPT_DTL_SQL);
-        ps.setString(1, clientId); // Parameter index starts at 1
-
-        // Polling for the database entry using JDK 8 compatible approach
-        ResultSet resultSet = ps.executeQuery();
-        long startTime = System.currentTimeMillis();
-        long maxWaitTime = 30000; // 30 seconds max wait time
-        long waitInterval = 2000; // Wait 2 seconds between retries
-        while (!resultSet.next()) {
-            // Check if we've exceeded the maximum wait time
-            if (System.currentTimeMillis() - startTime > maxWaitTime) {
-                throw new SQLException("TIMEOUT: Entry not found in database after waiting for " + maxWaitTime + "ms");
-            }
-            // Wait for a short interval before retry
-            try {
-                Thread.sleep(waitInterval);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            resultSet = ps.executeQuery(); // Retry the query
+
+        // Polling for the database entry using JDK 8 compatible approach; every poll closes its cursor
+        StreamingRowValidator.Result result;
+        try {
+            // Polls at the historical percentiles once enough waits are recorded; until then 100 ms at first,
+            // backing off to 2 seconds, for at most 30 seconds
+            LearnedPollStrategy learned = LearnedPollStrategy.forQuery(DbLoadGovernor.dataSourceOf(conn),
+                    SELECT_CLNT_ENCRYPT_DTL_SQL, ENCRYPTION_POLL_STRATEGY);
+            result = validator.await(conn, learned.timeout(Duration.ofMillis(30000)), learned, clientId);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
         }
 
         // If we reach here, the data is found
-        respClientId = resultSet.getString("CLNT_ID");
+        String respClientId = result.value("CLNT_ID");
         AonAssert.assertEquals(respClientId, clientId,
                 "Validating Encryption Details for the onboarded clientId in the Client Encryption Details table");
-        respKeyType = resultSet.getString("KEY_TYPE");
+        String respKeyType = result.value("KEY_TYPE");
         AonAssert.assertTrue(keyType.contains(respKeyType),
                 "Validating Key Status in the 'Client Encryption Details'");
         Logger.info("Expected Encryption key types: {} found for clientId: {} in the 'Client Encryption Details' table",
@@ -1,8 +1,8 @@
+package org.example;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.awaitility.Awaitility.await;
 import java.time.Duration;
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -14,6 +14,9 @@ class RestAssuredWithDatabaseWaitTest {
     private static final String DB_URL = "jdbc:your_db_url";
     private static final String DB_USER = "your_db_user";
     private static final String DB_PASS = "your_db_password";
+    private static final int MAX_POOL_SIZE = 4;
+
+    private static final DbConnectionPool CONNECTION_POOL = new DbConnectionPool(DB_URL, DB_USER, DB_PASS, MAX_POOL_SIZE);
 
     @Test
     void testDatabaseUpdateAfterApiCall() {
@@ -49,31 +52,17 @@ class RestAssuredWithDatabaseWaitTest {
 
     // Helper method to check if data is in the database
     private boolean isDataInDatabase(String apiResponse) throws SQLException {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
-
-        try {
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASS);
-            preparedStatement = connection.prepareStatement("SELECT COUNT(*) FROM your_table WHERE column = ?");
+        // Pooled connection and cached statement are returned to the pool when the lease closes
+        try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+            PreparedStatement preparedStatement = lease.prepare("SELECT COUNT(*) FROM your_table WHERE column = ?");
             preparedStatement.setString(1, apiResponse); // Replace with the data you're checking
-            resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                int count = resultSet.getInt(1);
-                return count > 0; // Return true if data is found
-            } else {
-                return false;
-            }
-        } finally {
-            // Ensure resources are closed in a finally block
-            if (resultSet != null) {
-                resultSet.close();
-            }
-            if (preparedStatement != null) {
-                preparedStatement.close();
-            }
-            if (connection != null) {
-                connection.close();
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    int count = resultSet.getInt(1);
+                    return count > 0; // Return true if data is found
+                } else {
+                    return false;
+                }
             }
         }
     }
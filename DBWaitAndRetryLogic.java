@@ -1,3 +1,6 @@
+private static final PollStrategy CLIENT_DETAILS_POLL_STRATEGY =
+        PollStrategy.fastStartThenDecay(Duration.ofMillis(100), 5, Duration.ofMillis(2000));
+
 public void validateClientOnboarding(String clientId, String operationStatus) throws SQLException {
     String respClientId = "";
     String respClientStatus = "";
@@ -11,28 +14,60 @@ public void validateClientOnboarding(String clientId, String operationStatus) th
         
         // Wait before the first query attempt to give the DB time to update
         long startTime = System.currentTimeMillis();
-        long maxWaitTime = 30000; // 30 seconds max wait time
-        long waitInterval = 2000; // Wait 2 seconds between retries
+        // Polls where past rows usually appeared; 30 seconds and the fixed schedule until enough history exists
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        LearnedPollStrategy learned = LearnedPollStrategy.forQuery(dataSource, SELECT_CLNT_DTL_SQL(), CLIENT_DETAILS_POLL_STRATEGY);
+        long maxWaitTime = learned.timeout(Duration.ofMillis(30000)).toMillis();
+        int attempt = 0;
+        WaitMetrics.Wait metrics = WaitMetrics.begin(SELECT_CLNT_DTL_SQL()).on(dataSource);
 
-        ResultSet resultSet = ps.executeQuery();
+        // Every query holds a permit, so parallel suites cannot flood the shared database
+        long queryStart = metrics.startQuery();
+        ResultSet resultSet = executeGoverned(ps, dataSource, startTime + maxWaitTime);
         while (!resultSet.next()) {
+            resultSet.close(); // Every retry opens a new cursor, so release this one first
+            metrics.endQuery(queryStart);
             // Check if we've exceeded the maximum wait time
-            if (System.currentTimeMillis() - startTime > maxWaitTime) {
+            if (System.currentTimeMillis() - startTime >= maxWaitTime) {
+                metrics.finish(false);
                 throw new SQLException("Timeout: Entry not found in database after waiting for " + maxWaitTime + "ms");
             }
 
-            // Wait for a short interval before retrying
-            Thread.sleep(waitInterval);
-            resultSet = ps.executeQuery(); // Retry the query
+            // Wait before retrying: at the next historical percentile, or 100 ms backing off to 2 seconds
+            learned.sleepBeforeNextPoll(++attempt, startTime + maxWaitTime);
+            queryStart = metrics.startQuery();
+            resultSet = executeGoverned(ps, dataSource, startTime + maxWaitTime); // Retry the query
         }
+        metrics.endQuery(queryStart);
+        metrics.finish(true);
 
         // If we reach here, the data is found
-        respClientId = resultSet.getString(columnLabel: "CLNT_ID");
-        respClientStatus = resultSet.getString(columnLabel: "CLNT_STAT");
+        try (ResultSet found = resultSet) {
+            respClientId = found.getString(columnLabel: "CLNT_ID");
+            respClientStatus = found.getString(columnLabel: "CLNT_STAT");
+        }
 
     }
 
     Assert.assertEquals(respClientId, clientId, message: "Validating entry in the 'Client Details' Table for the Onboarded ClientId");
     Assert.assertTrue(respClientStatus.contains(operationStatus), message: "Validating Operation Status in the 'Client Details' Table");
     Logger.info("OPERATION STATUS: {} found for clientId: {} in 'Client Details' table", operationStatus, clientId);
-}
\ No newline at end of file
+}
+
+private static ResultSet executeGoverned(PreparedStatement ps, String dataSource, long deadlineMillis) throws SQLException {
+    DbLoadGovernor.Permit permit;
+    try {
+        permit = DbLoadGovernor.acquire(dataSource, deadlineMillis);
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Client details polling interrupted", e);
+    } catch (TimeoutException e) {
+        // Still queued for a query permit when the wait ran out
+        throw new SQLException("Timeout: Entry not found in database before " + deadlineMillis, e);
+    }
+    try {
+        return ps.executeQuery();
+    } finally {
+        permit.close();
+    }
+}
@@ -1,11 +1,33 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
 import io.restassured.RestAssured;
 import io.restassured.response.Response;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ApiDatabaseTestFramework {
     
@@ -14,6 +36,44 @@ public class ApiDatabaseTestFramework {
     private static final String DB_PASSWORD = "testpass";
     private static final int DEFAULT_TIMEOUT_SECONDS = 30;
     private static final int POLL_INTERVAL_SECONDS = 2;
+    private static final int MAX_POOL_SIZE = 8;
+    private static final int FAN_OUT_USER_COUNT = 1000;
+    private static final int FAN_OUT_MAX_IN_FLIGHT = 32;
+    private static final int STUB_FAN_OUT_USER_COUNT = 200;
+    private static final long STUB_WRITE_DELAY_MILLIS = 20;
+    private static final Pattern STUB_NAME_FIELD = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
+    private static final String LOAD_RATE_PROPERTY = "dbwait.load.rate";
+    private static final String LOAD_DURATION_PROPERTY = "dbwait.load.seconds";
+    private static final String FIXTURE_FILE_PROPERTY = "dbwait.fixtures.users";
+    private static final int FIXTURE_BATCH_SIZE = 1000;
+    private static final int FIXTURE_WRITERS = 4;
+    private static final String EXPECTED_USERS_PROPERTY = "dbwait.expected.users";
+    private static final int COMPARISON_THREADS = 4;
+    private static final long REPLICA_DELAY_MILLIS = 200;
+    private static final long REPLICA_LAG_BUDGET_MILLIS = 1000;
+    private static final String USER_COUNT_QUERY = "SELECT COUNT(*) FROM users WHERE id = ?";
+    private static final String USER_STATUS_QUERY = "SELECT status FROM users WHERE id = ?";
+    private static final String ORDER_STATUS_QUERY = "SELECT status FROM orders WHERE order_id = ?";
+    private static final String UNTAGGED_CONDITION = "DatabaseCondition"; // Metrics tag when no SQL is given
+    // States a user or order never leaves; waiting for anything else after one of these is pointless
+    private static final String[] TERMINAL_FAILURE_STATUSES = {"FAILED", "REJECTED"};
+    private static final StateExpectation ORDER_PROCESSED =
+            StateExpectation.of("status", "PROCESSED", TERMINAL_FAILURE_STATUSES);
+
+    // Starts at 100 ms so fast writes are seen quickly, then backs off to the old 2 s interval
+    private static final PollStrategy DEFAULT_POLL_STRATEGY = PollStrategy.exponentialWithJitter(
+            Duration.ofMillis(100), Duration.ofSeconds(POLL_INTERVAL_SECONDS), 2.0, 0.2);
+
+    // Shared by all test threads so polls reuse connections instead of reconnecting every time
+    private static final DbConnectionPool CONNECTION_POOL =
+            new DbConnectionPool(DB_URL, DB_USER, DB_PASSWORD, MAX_POOL_SIZE);
+
+    private static volatile String dataSource;
+
+    static {
+        // A processed order never changes again, so later checks can skip the database
+        TerminalStateCache.registerTerminal("orders", "status", "PROCESSED");
+    }
 
     /**
      * Method 1: Simple Thread.sleep (Not Recommended for production)
@@ -24,7 +84,7 @@ public class ApiDatabaseTestFramework {
         Response response = RestAssured
                 .given()
                 .header("Content-Type", "application/json")
-                .body("{\"name\":\"John\",\"email\":\"john@example.com\"}")
+                .body("{\"name\":\"John\",\"email\":\"" + WorkerNamespace.key("john") + "@example.com\"}")
                 .when()
                 .post("/api/users")
                 .then()
@@ -56,7 +116,7 @@ public class ApiDatabaseTestFramework {
         Response response = RestAssured
                 .given()
                 .header("Content-Type", "application/json")
-                .body("{\"name\":\"Jane\",\"email\":\"jane@example.com\"}")
+                .body("{\"name\":\"Jane\",\"email\":\"" + WorkerNamespace.key("jane") + "@example.com\"}")
                 .when()
                 .post("/api/users")
                 .then()
@@ -66,7 +126,7 @@ public class ApiDatabaseTestFramework {
         String userId = response.jsonPath().getString("id");
 
         // Poll database until user appears or timeout
-        boolean userExists = waitForUserInDatabase(userId, DEFAULT_TIMEOUT_SECONDS);
+        boolean userExists = waitForUserInDatabase(userId, Duration.ofSeconds(DEFAULT_TIMEOUT_SECONDS));
         Assert.assertTrue(userExists, "User should exist in database within timeout period");
     }
 
@@ -87,7 +147,7 @@ public class ApiDatabaseTestFramework {
         Response response = RestAssured
                 .given()
                 .header("Content-Type", "application/json")
-                .body("{\"name\":\"Bob\",\"email\":\"bob@example.com\"}")
+                .body("{\"name\":\"Bob\",\"email\":\"" + WorkerNamespace.key("bob") + "@example.com\"}")
                 .when()
                 .post("/api/users")
                 .then()
@@ -110,36 +170,318 @@ public class ApiDatabaseTestFramework {
      */
     @Test
     public void testApiWithAdvancedWait() {
+        // This worker's own user, so tests running in parallel never update the same row
+        String email = WorkerNamespace.key("advanced-wait") + "@example.com";
+        String userId = RestAssured
+                .given()
+                .header("Content-Type", "application/json")
+                .body("{\"name\":\"Advanced\",\"email\":\"" + email + "\"}")
+                .when()
+                .post("/api/users")
+                .then()
+                .statusCode(201)
+                .extract().response()
+                .jsonPath().getString("id");
+
         // Make API call to update user status
         Response response = RestAssured
                 .given()
                 .header("Content-Type", "application/json")
                 .body("{\"status\":\"ACTIVE\"}")
                 .when()
-                .put("/api/users/123/status")
+                .put("/api/users/" + userId + "/status")
                 .then()
                 .statusCode(200)
                 .extract().response();
 
         // Wait for specific database state
-        boolean statusUpdated = waitForUserStatus("123", "ACTIVE", 30);
+        boolean statusUpdated = waitForUserStatus(userId, "ACTIVE", Duration.ofSeconds(DEFAULT_TIMEOUT_SECONDS));
         Assert.assertTrue(statusUpdated, "User status should be updated to ACTIVE");
     }
 
+    /**
+     * Method 5: Pipelined fan-out - many API calls in flight, then one batched database verification
+     */
+    @Test
+    public void testApiFanOutWithBatchedVerification() throws SQLException {
+        List<String> names = fanOutNames(FAN_OUT_USER_COUNT);
+
+        // At most FAN_OUT_MAX_IN_FLIGHT calls at a time, ids collected in request order
+        PipelinedApiFanOut.Result sent = PipelinedApiFanOut.withMaxInFlight(FAN_OUT_MAX_IN_FLIGHT).fire(names, name ->
+                RestAssured
+                        .given()
+                        .header("Content-Type", "application/json")
+                        .body("{\"name\":\"" + name + "\",\"email\":\"" + name + "@example.com\"}")
+                        .when()
+                        .post("/api/users")
+                        .then()
+                        .statusCode(201)
+                        .extract().response()
+                        .jsonPath().getString("id"));
+        Assert.assertTrue(sent.failures().isEmpty(), "API calls failed: " + sent.failures());
+
+        // One IN (...) query per poll for all users still missing
+        Map<String, Boolean> found;
+        try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+            found = sent.verify(lease.connection(), "users", "id", "id", sent.idsAsExpected(), DEFAULT_POLL_STRATEGY);
+        }
+        Assert.assertFalse(found.containsValue(false), "Users missing from database: " + found);
+        System.out.println(names.size() + " users created and verified, API phase took "
+                + sent.elapsed().toMillis() + "ms with " + sent.peakInFlight() + " calls in flight");
+    }
+
+    /**
+     * Method 6: Open-loop load - POST users at a fixed rate and measure API ack to database visibility.
+     * Only runs when -Ddbwait.load.rate=&lt;requests per second&gt; is given; repeat with higher rates to compare.
+     */
+    @Test(groups = "load")
+    public void testWritePropagationUnderLoad() throws Exception {
+        String rate = System.getProperty(LOAD_RATE_PROPERTY);
+        if (rate == null) {
+            throw new SkipException("Set -D" + LOAD_RATE_PROPERTY + " to run the propagation load test");
+        }
+
+        // Taken on the test thread: API calls run on the generator's workers, which have namespaces of their own
+        String user = WorkerNamespace.key("load-user");
+        PropagationLoadGenerator.Report report;
+        try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+            report = PropagationLoadGenerator.builder()
+                    .targetRatePerSecond(Double.parseDouble(rate))
+                    .duration(Duration.ofSeconds(Long.getLong(LOAD_DURATION_PROPERTY, 60)))
+                    .apiCall(seq -> RestAssured
+                            .given()
+                            .header("Content-Type", "application/json")
+                            .body("{\"name\":\"" + user + "-" + seq + "\",\"email\":\"" + user + "-" + seq
+                                    + "@example.com\"}")
+                            .when()
+                            .post("/api/users")
+                            .then()
+                            .statusCode(201)
+                            .extract().response()
+                            .jsonPath().getString("id"))
+                    .visibleIn(lease.connection(), "users", "id")
+                    .build()
+                    .run();
+        }
+        report.writeHistograms(Paths.get("target", "propagation-" + rate + "rps"));
+        System.out.println(report);
+        Assert.assertEquals(report.visibilityTimeouts(), 0L, "Users never became visible in the database");
+    }
+
+    /**
+     * Method 7: Replica-aware routing - two in-memory H2 databases with simulated replication lag. Polls use the
+     * replica while its lag is within budget and move to the primary when it falls behind.
+     * Only runs when the H2 driver is on the test classpath.
+     */
+    @Test(groups = "replica")
+    public void testReplicaRoutingWithSimulatedLag() throws Exception {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SkipException("Add com.h2database:h2 to the test classpath to run the replica routing test");
+        }
+
+        String primaryUrl = "jdbc:h2:mem:wait_primary_" + WorkerNamespace.namespace() + ";DB_CLOSE_DELAY=-1";
+        String replicaUrl = "jdbc:h2:mem:wait_replica_" + WorkerNamespace.namespace() + ";DB_CLOSE_DELAY=-1";
+        try (DbConnectionPool primary = new DbConnectionPool(primaryUrl, "sa", "", 4);
+             DbConnectionPool replica = new DbConnectionPool(replicaUrl, "sa", "", 4)) {
+            for (DbConnectionPool side : new DbConnectionPool[] {primary, replica}) {
+                try (DbConnectionPool.Lease lease = side.lease();
+                     Statement stmt = lease.connection().createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS users (id VARCHAR(64) PRIMARY KEY, status VARCHAR(32))");
+                    ReplicaRouter.createHeartbeatTable(lease.connection(), ReplicaRouter.DEFAULT_HEARTBEAT_TABLE);
+                }
+            }
+            WaitExpectation active = WaitExpectation.equalTo("status", "ACTIVE");
+            PollStrategy fastPolls = PollStrategy.fixed(Duration.ofMillis(50));
+
+            try (DelayedReplication replication = new DelayedReplication(primary, replica, Duration.ofMillis(REPLICA_DELAY_MILLIS),
+                         "users", ReplicaRouter.DEFAULT_HEARTBEAT_TABLE);
+                 ReplicaRouter router = ReplicaRouter.builder(primary, replica)
+                         .heartbeatInterval(Duration.ofMillis(100))
+                         .lagBudget(Duration.ofMillis(REPLICA_LAG_BUDGET_MILLIS))
+                         .start()) {
+                // Lag within budget: the wait is served by the replica once the first heartbeat has been read back
+                Instant lagDeadline = Instant.now().plusSeconds(5);
+                while (router.replicaLag() == null && Instant.now().isBefore(lagDeadline)) {
+                    Thread.sleep(50);
+                }
+                Assert.assertTrue(router.replicaLag() != null, "Replica lag should be measured: " + router);
+                String firstUser = WorkerNamespace.key("replica-user-1");
+                insertUser(primary, firstUser);
+                DbWaitUtil.waitForRecord(router, USER_STATUS_QUERY, firstUser, active, fastPolls);
+                Assert.assertTrue(router.replicaPolls() > 0, "Polls should go to the replica while it keeps up: " + router);
+
+                // Lag spike beyond budget: the router moves polls to the primary instead of waiting for the replica
+                replication.setDelay(Duration.ofMinutes(1));
+                long primaryPollsBefore = router.primaryPolls();
+                String secondUser = WorkerNamespace.key("replica-user-2");
+                insertUser(primary, secondUser);
+                Instant start = Instant.now();
+                DbWaitUtil.waitForRecord(router, USER_STATUS_QUERY, secondUser, active, fastPolls);
+                Assert.assertTrue(router.primaryPolls() > primaryPollsBefore, "Lagging replica should be bypassed: " + router);
+                Assert.assertTrue(Duration.between(start, Instant.now()).getSeconds() < DEFAULT_TIMEOUT_SECONDS,
+                        "Row should be seen on the primary long before the timeout");
+            }
+        }
+    }
+
+    /**
+     * Method 8: Bulk seeding - load users from a CSV or JSON file with batched inserts instead of one API call each.
+     * Only runs when -Ddbwait.fixtures.users=&lt;file&gt; is given.
+     */
+    @Test(groups = "load")
+    public void testBulkFixtureLoad() throws Exception {
+        String file = System.getProperty(FIXTURE_FILE_PROPERTY);
+        if (file == null) {
+            throw new SkipException("Set -D" + FIXTURE_FILE_PROPERTY + " to run the bulk fixture load");
+        }
+
+        FixtureLoader.Report report = FixtureLoader.into(CONNECTION_POOL, "users")
+                .batchSize(FIXTURE_BATCH_SIZE)
+                .writers(FIXTURE_WRITERS)
+                .load(Paths.get(file));
+        System.out.println(report);
+        Assert.assertTrue(report.rows() > 0, "No users loaded from " + file);
+    }
+
+    /**
+     * Method 9: Full-table check - compare the whole users table with an expected dataset after a batch job.
+     * Only runs when -Ddbwait.expected.users=&lt;file&gt; is given.
+     */
+    @Test(groups = "load")
+    public void testUsersTableMatchesExpectedDataset() throws Exception {
+        String file = System.getProperty(EXPECTED_USERS_PROPERTY);
+        if (file == null) {
+            throw new SkipException("Set -D" + EXPECTED_USERS_PROPERTY + " to compare the users table");
+        }
+
+        DatasetComparison.Report diff = DatasetComparison.of(CONNECTION_POOL, "users", "id")
+                .threads(COMPARISON_THREADS)
+                .compareTo(Paths.get(file));
+        System.out.println(diff);
+        Assert.assertTrue(diff.matches(), diff.toString());
+    }
+
+    /**
+     * Method 10: Pipelined fan-out against a local stub - an embedded HTTP server stands in for the API and writes
+     * each user to an in-memory H2 database shortly after acknowledging it, so the fan-out and the batched
+     * verification run without a deployed service. Only runs when the H2 driver is on the test classpath.
+     */
+    @Test(groups = "stub")
+    public void testApiFanOutAgainstLocalStub() throws Exception {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SkipException("Add com.h2database:h2 to the test classpath to run the stub fan-out test");
+        }
+
+        String dbUrl = "jdbc:h2:mem:fanout_" + WorkerNamespace.namespace() + ";DB_CLOSE_DELAY=-1";
+        try (DbConnectionPool pool = new DbConnectionPool(dbUrl, "sa", "", 4)) {
+            try (DbConnectionPool.Lease lease = pool.lease();
+                 Statement stmt = lease.connection().createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS users (id VARCHAR(64) PRIMARY KEY, status VARCHAR(32))");
+            }
+
+            ScheduledExecutorService writes = Executors.newSingleThreadScheduledExecutor();
+            ExecutorService handlers = Executors.newFixedThreadPool(FAN_OUT_MAX_IN_FLIGHT);
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.setExecutor(handlers);
+            server.createContext("/api/users", exchange -> {
+                Matcher name = STUB_NAME_FIELD.matcher(readBody(exchange.getRequestBody()));
+                String id = name.find() ? name.group(1) : null;
+                int status = id == null ? 400 : 201;
+                if (id != null) {
+                    // Acknowledged before it is written, like a service that persists asynchronously
+                    writes.schedule(() -> {
+                        try {
+                            insertUser(pool, id);
+                        } catch (SQLException e) {
+                            System.err.println("Stub failed to write user " + id + ": " + e.getMessage());
+                        }
+                    }, STUB_WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                byte[] response = ("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            });
+            server.start();
+            try {
+                String baseUri = "http://localhost:" + server.getAddress().getPort();
+                List<String> names = fanOutNames(STUB_FAN_OUT_USER_COUNT);
+                PipelinedApiFanOut.Result sent = PipelinedApiFanOut.withMaxInFlight(FAN_OUT_MAX_IN_FLIGHT).fire(names, name ->
+                        RestAssured
+                                .given()
+                                .baseUri(baseUri)
+                                .header("Content-Type", "application/json")
+                                .body("{\"name\":\"" + name + "\",\"email\":\"" + name + "@example.com\"}")
+                                .when()
+                                .post("/api/users")
+                                .then()
+                                .statusCode(201)
+                                .extract().response()
+                                .jsonPath().getString("id"));
+                Assert.assertTrue(sent.failures().isEmpty(), "API calls failed: " + sent.failures());
+                Assert.assertEquals(sent.ids(), names, "Stub should return each user's name as its id");
+
+                Map<String, Boolean> found;
+                try (DbConnectionPool.Lease lease = pool.lease()) {
+                    found = sent.verify(lease.connection(), "users", "id", "id", sent.idsAsExpected(),
+                            PollStrategy.fixed(Duration.ofMillis(50)));
+                }
+                Assert.assertEquals(found.size(), names.size(), "Every user should be verified");
+                Assert.assertFalse(found.containsValue(false), "Users missing from database: " + found);
+            } finally {
+                server.stop(0);
+                handlers.shutdownNow();
+                writes.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * User names for a fan-out, in this worker's namespace so parallel workers and earlier runs never collide.
+     */
+    private static List<String> fanOutNames(int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            names.add(WorkerNamespace.key("fanout-user-" + i));
+        }
+        return names;
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void insertUser(DbConnectionPool pool, String userId) throws SQLException {
+        try (DbConnectionPool.Lease lease = pool.lease()) {
+            PreparedStatement stmt = lease.prepare("INSERT INTO users (id, status) VALUES (?, 'ACTIVE')");
+            stmt.setString(1, userId);
+            stmt.executeUpdate();
+        }
+    }
+
     /**
      * Utility method to check if user exists in database
      */
     private boolean checkUserInDatabase(String userId) {
-        String query = "SELECT COUNT(*) FROM users WHERE id = ?";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            
+        try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+            PreparedStatement stmt = lease.prepare(USER_COUNT_QUERY);
             stmt.setString(1, userId);
-            ResultSet rs = stmt.executeQuery();
             
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
+            try (ResultSet rs = WaitEvents.executeQuery(stmt, USER_COUNT_QUERY, userId)) {
+                if (rs.next()) {
+                    return rs.getInt(1) > 0;
+                }
             }
             
         } catch (SQLException e) {
@@ -151,25 +493,22 @@ public class ApiDatabaseTestFramework {
     }
 
     /**
-     * Polling method with timeout
+     * Polling method with timeout. Concurrent waits for the same user share one poll. Once enough waits are
+     * recorded, polls follow past visibility delays and the timeout comes from their tail.
      */
-    private boolean waitForUserInDatabase(String userId, int timeoutSeconds) {
+    private boolean waitForUserInDatabase(String userId, Duration fallbackTimeout) {
         Instant startTime = Instant.now();
-        Instant endTime = startTime.plusSeconds(timeoutSeconds);
+        SingleFlightWait.WaitKey key = new SingleFlightWait.WaitKey(dataSource(), USER_COUNT_QUERY,
+                Collections.singletonList(userId), "COUNT > 0");
+        LearnedPollStrategy learned = LearnedPollStrategy.forQuery(dataSource(), USER_COUNT_QUERY, DEFAULT_POLL_STRATEGY);
         
-        while (Instant.now().isBefore(endTime)) {
-            if (checkUserInDatabase(userId)) {
-                System.out.println("User found in database after " + 
-                    Duration.between(startTime, Instant.now()).getSeconds() + " seconds");
-                return true;
-            }
-            
-            try {
-                TimeUnit.SECONDS.sleep(POLL_INTERVAL_SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Polling interrupted", e);
-            }
+        boolean found = SingleFlightWait.await(key, learned.timeout(fallbackTimeout),
+                remaining -> waitForDatabaseCondition(USER_COUNT_QUERY, () -> checkUserInDatabase(userId),
+                        remaining, learned));
+        if (found) {
+            System.out.println("User found in database after " + 
+                Duration.between(startTime, Instant.now()).getSeconds() + " seconds");
+            return true;
         }
         
         System.err.println("Timeout waiting for user in database");
@@ -177,39 +516,44 @@ public class ApiDatabaseTestFramework {
     }
 
     /**
-     * Wait for specific user status
+     * Wait for specific user status. Concurrent waits for the same user and status share one poll,
+     * scheduled like {@link #waitForUserInDatabase(String, Duration)}.
+     *
+     * @throws TerminalStateException as soon as the user is FAILED or REJECTED
      */
-    private boolean waitForUserStatus(String userId, String expectedStatus, int timeoutSeconds) {
-        String query = "SELECT status FROM users WHERE id = ?";
+    private boolean waitForUserStatus(String userId, String expectedStatus, Duration fallbackTimeout) {
         Instant startTime = Instant.now();
-        Instant endTime = startTime.plusSeconds(timeoutSeconds);
+        StateExpectation expectation = StateExpectation.of("status", expectedStatus, TERMINAL_FAILURE_STATUSES);
+        SingleFlightWait.WaitKey key = new SingleFlightWait.WaitKey(dataSource(), USER_STATUS_QUERY,
+                Collections.singletonList(userId), expectation.canonical());
+        LearnedPollStrategy learned = LearnedPollStrategy.forQuery(dataSource(), USER_STATUS_QUERY, DEFAULT_POLL_STRATEGY);
         
-        while (Instant.now().isBefore(endTime)) {
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 PreparedStatement stmt = conn.prepareStatement(query)) {
-                
-                stmt.setString(1, userId);
-                ResultSet rs = stmt.executeQuery();
-                
+        boolean updated = SingleFlightWait.await(key, learned.timeout(fallbackTimeout),
+                remaining -> waitForDatabaseCondition(USER_STATUS_QUERY, () -> userHasStatus(userId, expectation),
+                        remaining, learned));
+        if (updated) {
+            System.out.println("User status updated to " + expectedStatus + " after " + 
+                Duration.between(startTime, Instant.now()).getSeconds() + " seconds");
+        }
+        return updated;
+    }
+
+    /**
+     * Utility method to check the current status of a user; throws {@link TerminalStateException} on a failure status
+     */
+    private boolean userHasStatus(String userId, StateExpectation expectation) {
+        try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+            PreparedStatement stmt = lease.prepare(USER_STATUS_QUERY);
+            stmt.setString(1, userId);
+            
+            try (ResultSet rs = WaitEvents.executeQuery(stmt, USER_STATUS_QUERY, userId)) {
                 if (rs.next()) {
-                    String currentStatus = rs.getString("status");
-                    if (expectedStatus.equals(currentStatus)) {
-                        System.out.println("User status updated to " + expectedStatus + " after " + 
-                            Duration.between(startTime, Instant.now()).getSeconds() + " seconds");
-                        return true;
-                    }
+                    return expectation.reached("users", userId, rs.getString("status"));
                 }
-                
-            } catch (SQLException e) {
-                System.err.println("Database error during status check: " + e.getMessage());
             }
             
-            try {
-                TimeUnit.SECONDS.sleep(POLL_INTERVAL_SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Status polling interrupted", e);
-            }
+        } catch (SQLException e) {
+            System.err.println("Database error during status check: " + e.getMessage());
         }
         
         return false;
@@ -219,27 +563,154 @@ public class ApiDatabaseTestFramework {
      * Generic database polling utility
      */
     public boolean waitForDatabaseCondition(DatabaseCondition condition, int timeoutSeconds) {
+        return waitForDatabaseCondition(UNTAGGED_CONDITION, condition, timeoutSeconds, DEFAULT_POLL_STRATEGY);
+    }
+
+    /**
+     * Generic database polling utility with a custom poll schedule
+     */
+    public boolean waitForDatabaseCondition(DatabaseCondition condition, int timeoutSeconds, PollStrategy pollStrategy) {
+        return waitForDatabaseCondition(UNTAGGED_CONDITION, condition, timeoutSeconds, pollStrategy);
+    }
+
+    /**
+     * Generic database polling utility; {@code sql} is the query the condition runs, used to tag {@link WaitMetrics}
+     * and {@link WaitEvents}. Every check holds a {@link DbLoadGovernor} permit for the test database.
+     */
+    public boolean waitForDatabaseCondition(String sql, DatabaseCondition condition, int timeoutSeconds,
+                                            PollStrategy pollStrategy) {
+        return waitForDatabaseCondition(sql, condition, Duration.ofSeconds(timeoutSeconds), pollStrategy);
+    }
+
+    /**
+     * Same as {@link #waitForDatabaseCondition(String, DatabaseCondition, int, PollStrategy)} with a finer timeout.
+     */
+    public boolean waitForDatabaseCondition(String sql, DatabaseCondition condition, Duration timeout,
+                                            PollStrategy pollStrategy) {
         Instant startTime = Instant.now();
-        Instant endTime = startTime.plusSeconds(timeoutSeconds);
+        Instant endTime = startTime.plus(timeout);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource());
+        int attempt = 0;
         
-        while (Instant.now().isBefore(endTime)) {
-            if (condition.check()) {
-                return true;
-            }
-            
-            try {
-                TimeUnit.SECONDS.sleep(POLL_INTERVAL_SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Database condition polling interrupted", e);
+        try {
+            while (Instant.now().isBefore(endTime)) {
+                long queryStart = metrics.startQuery();
+                WaitEvents.Poll poll = WaitEvents.beginPoll(sql, null);
+                boolean met;
+                try {
+                    DbLoadGovernor.Permit permit = DbLoadGovernor.acquire(dataSource(), endTime.toEpochMilli());
+                    try {
+                        met = condition.check();
+                    } finally {
+                        permit.close();
+                    }
+                } catch (TimeoutException e) {
+                    poll.finish(WaitEvents.TIMEOUT); // Still queued for a query permit at the deadline
+                    break;
+                } catch (TerminalStateException e) {
+                    poll.finish(WaitEvents.TERMINAL_STATE);
+                    metrics.endQuery(queryStart);
+                    metrics.failed();
+                    throw e;
+                } catch (InterruptedException | RuntimeException e) {
+                    poll.finish(WaitEvents.ERROR);
+                    throw e;
+                }
+                poll.finish(met ? WaitEvents.MATCHED : WaitEvents.PENDING);
+                metrics.endQuery(queryStart);
+                if (met) {
+                    metrics.finish(true);
+                    return true;
+                }
+                
+                pollStrategy.sleepBeforeNextPoll(++attempt, endTime.toEpochMilli());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Database condition polling interrupted", e);
         }
         
+        metrics.finish(false);
         return false;
     }
 
     /**
-     * Functional interface for database conditions
+     * Same as {@link #waitForDatabaseCondition(String, DatabaseCondition, int, PollStrategy)} for a condition that
+     * checks {@code table.column = expectedValue} for one entity. Returns at once if {@link TerminalStateCache} already
+     * knows that terminal value, and records it when the condition holds.
+     */
+    public boolean waitForTerminalState(String table, String key, String column, String expectedValue, String sql,
+                                        DatabaseCondition condition, int timeoutSeconds) {
+        String keyColumn = TerminalStateCache.keyColumnOf(sql);
+        if (expectedValue.equals(TerminalStateCache.lookup(table, keyColumn, key, column))) {
+            return true;
+        }
+        boolean met = waitForDatabaseCondition(sql, condition, timeoutSeconds, DEFAULT_POLL_STRATEGY);
+        if (met) {
+            TerminalStateCache.remember(table, keyColumn, key, column, expectedValue);
+        }
+        return met;
+    }
+
+    /**
+     * Non-blocking version of {@link #waitForDatabaseCondition(DatabaseCondition, int)}.
+     * Polls on the shared {@link AsyncDbWait} scheduler, so many waits can be combined with
+     * CompletableFuture.allOf / anyOf without a thread per wait.
+     */
+    public CompletableFuture<Boolean> waitForDatabaseConditionAsync(DatabaseCondition condition, Duration timeout) {
+        return waitForDatabaseConditionAsync(condition, timeout, DEFAULT_POLL_STRATEGY);
+    }
+
+    /**
+     * Non-blocking database polling utility with a custom poll schedule
+     */
+    public CompletableFuture<Boolean> waitForDatabaseConditionAsync(DatabaseCondition condition, Duration timeout,
+                                                                    PollStrategy pollStrategy) {
+        return waitForDatabaseConditionAsync(UNTAGGED_CONDITION, condition, timeout, pollStrategy);
+    }
+
+    /**
+     * Non-blocking database polling utility; {@code sql} is the query the condition runs, used to tag {@link WaitMetrics}.
+     * Checks are governed like {@link #waitForDatabaseCondition(String, DatabaseCondition, int, PollStrategy)}.
+     */
+    public CompletableFuture<Boolean> waitForDatabaseConditionAsync(String sql, DatabaseCondition condition, Duration timeout,
+                                                                    PollStrategy pollStrategy) {
+        String dataSource = dataSource();
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        CompletableFuture<Boolean> poll = AsyncDbWait.waitUntilGoverned(dataSource,
+                metrics.timed(WaitEvents.traced(sql, null, condition::check)), timeout, pollStrategy, null);
+        poll.whenComplete((met, error) -> {
+            if (error == null) {
+                metrics.finish(met);
+            } else {
+                metrics.failed();
+            }
+        });
+        return poll;
+    }
+
+    /**
+     * Name of the test database as {@link DbLoadGovernor#dataSourceOf} gives it. Every governor permit, coalescing
+     * key and {@link PollHistory} entry of this framework uses it, so its waits and {@link DbWaitUtil} waits on the
+     * same database share one budget and one history. Falls back to the configured URL, for the rest of the run,
+     * if the database cannot be reached to ask.
+     */
+    private static String dataSource() {
+        String name = dataSource;
+        if (name == null) {
+            try {
+                name = CONNECTION_POOL.dataSource();
+            } catch (SQLException e) {
+                name = DB_URL;
+            }
+            dataSource = name;
+        }
+        return name;
+    }
+
+    /**
+     * Functional interface for database conditions. A condition may throw {@link TerminalStateException}
+     * to end the wait at once (see {@link StateExpectation#reached}).
      */
     @FunctionalInterface
     public interface DatabaseCondition {
@@ -251,26 +722,32 @@ public class ApiDatabaseTestFramework {
      */
     @Test
     public void testWithGenericDatabaseCondition() {
+        // Order id in this worker's namespace, bound as a parameter rather than written into the SQL
+        String orderId = WorkerNamespace.key("ORD123");
+
         // Make API call
         Response response = RestAssured
                 .given()
                 .header("Content-Type", "application/json")
-                .body("{\"orderId\":\"ORD123\",\"amount\":100.00}")
+                .body("{\"orderId\":\"" + orderId + "\",\"amount\":100.00}")
                 .when()
                 .post("/api/orders")
                 .then()
                 .statusCode(201)
                 .extract().response();
+        // The order was just (re)created, so a cached PROCESSED from an earlier test no longer holds
+        TerminalStateCache.invalidate("orders", orderId);
 
         // Wait for order to be processed
-        boolean orderProcessed = waitForDatabaseCondition(() -> {
-            String query = "SELECT status FROM orders WHERE order_id = 'ORD123'";
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 PreparedStatement stmt = conn.prepareStatement(query)) {
-                
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    return "PROCESSED".equals(rs.getString("status"));
+        boolean orderProcessed = waitForTerminalState("orders", orderId, "status", "PROCESSED", ORDER_STATUS_QUERY, () -> {
+            try (DbConnectionPool.Lease lease = CONNECTION_POOL.lease()) {
+                PreparedStatement stmt = lease.prepare(ORDER_STATUS_QUERY);
+                stmt.setString(1, orderId);
+                try (ResultSet rs = WaitEvents.executeQuery(stmt, ORDER_STATUS_QUERY, orderId)) {
+                    if (rs.next()) {
+                        // A FAILED or REJECTED order ends the wait at once instead of after 30 seconds
+                        return ORDER_PROCESSED.reached("orders", orderId, rs.getString("status"));
+                    }
                 }
             } catch (SQLException e) {
                 System.err.println("Database error: " + e.getMessage());
@@ -0,0 +1,711 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Compares a whole table with an expected dataset file (JSON or CSV, as read by {@link FixtureLoader}) and reports
+ * missing, extra and mismatched rows, for checking the output of batch jobs where single-row waits are not enough.
+ * <pre>
+ * DatasetComparison.Report diff = DatasetComparison.of(pool, "CLIENT_DETAILS", "CLNT_ID")
+ *         .threads(4)
+ *         .compareTo(Paths.get("expected/client_details.csv"));
+ * Assert.assertTrue(diff.matches(), diff.toString());
+ * </pre>
+ * Only the columns present in the file are compared, and the key column must be one of them. The table is read in
+ * key-range chunks on several pooled connections when the key is an integer (one streamed scan otherwise), each
+ * chunk holding a {@link DbLoadGovernor} permit; MySQL only streams them with {@code useCursorFetch=true} on the URL.
+ * Every row is spilled, with a 64-bit hash of its values, to one of {@code partitions} files on disk chosen by key
+ * hash, and the partitions are then diffed in parallel, one in memory at a time per thread. Heap use therefore
+ * depends on the partition size, not the table size: raise {@link #partitions(int)} for bigger tables.
+ * <p>
+ * Values are compared as text. Where the table column is numeric, file values are compared as numbers, so
+ * {@code 1.50} in a CSV matches a DECIMAL 1.5; other types must be written in the file as JDBC renders them.
+ */
+public final class DatasetComparison {
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int SPILL_BUFFER_BYTES = 8192;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final DbConnectionPool pool;
+    private final String table;
+    private final String keyColumn;
+    private int threads = 4;
+    private int partitions = 256;
+    private int sampleLimit = 20;
+
+    private DatasetComparison(DbConnectionPool pool, String table, String keyColumn) {
+        this.pool = pool;
+        this.table = WaitExpectation.requireTableName(table);
+        this.keyColumn = WaitExpectation.requireIdentifier(keyColumn);
+    }
+
+    public static DatasetComparison of(DbConnectionPool pool, String table, String keyColumn) {
+        return new DatasetComparison(pool, table, keyColumn);
+    }
+
+    /**
+     * Threads reading key ranges and diffing partitions; each reader leases its own connection.
+     */
+    public DatasetComparison threads(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = count;
+        return this;
+    }
+
+    /**
+     * Number of spill partitions; each thread holds one partition of the expected rows in memory while diffing.
+     */
+    public DatasetComparison partitions(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("partitions must be at least 1");
+        }
+        this.partitions = count;
+        return this;
+    }
+
+    /**
+     * How many rows of each kind of difference are reported with their values; all of them are counted.
+     */
+    public DatasetComparison sampleLimit(int rows) {
+        this.sampleLimit = Math.max(0, rows);
+        return this;
+    }
+
+    public Report compareTo(Path expectedFile) throws IOException, SQLException {
+        long startNanos = System.nanoTime();
+        Path spillDir = Files.createTempDirectory("dataset-diff-" + table);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "dataset-diff-" + table);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FixtureRows expectedRows = FixtureRows.open(expectedFile)) {
+            List<String> columns = expectedRows.columns();
+            int keyIndex = indexOf(columns, keyColumn);
+            if (keyIndex < 0) {
+                throw new IllegalArgumentException("Key column " + keyColumn + " is not in " + expectedFile);
+            }
+            for (String column : columns) {
+                WaitExpectation.requireIdentifier(column);
+            }
+            String selectSql = "SELECT " + String.join(", ", columns) + " FROM " + table;
+            boolean[] numeric = numericColumns(selectSql, columns.size());
+
+            try (SpillFiles expected = new SpillFiles(spillDir, "expected", partitions);
+                 SpillFiles actual = new SpillFiles(spillDir, "actual", partitions)) {
+                // The file is read on this thread while the table chunks are read on the pool
+                List<Future<Long>> reads = new ArrayList<>();
+                for (String rangeSql : keyRanges(selectSql)) {
+                    reads.add(executor.submit(() -> spillTable(rangeSql, keyIndex, actual)));
+                }
+                long expectedCount = spillFile(expectedRows, keyIndex, numeric, expected);
+                long actualCount = 0;
+                for (Future<Long> read : reads) {
+                    actualCount += get(read);
+                }
+                expected.finish();
+                actual.finish();
+
+                Differences differences = new Differences(sampleLimit, columns);
+                List<Future<?>> diffs = new ArrayList<>();
+                for (int p = 0; p < partitions; p++) {
+                    int partition = p;
+                    diffs.add(executor.submit(() -> {
+                        diffPartition(expected.file(partition), actual.file(partition), differences);
+                        return null;
+                    }));
+                }
+                for (Future<?> diff : diffs) {
+                    get(diff);
+                }
+                return new Report(table, expectedCount, actualCount, differences,
+                        Duration.ofNanos(System.nanoTime() - startNanos));
+            }
+        } finally {
+            executor.shutdownNow();
+            deleteRecursively(spillDir);
+        }
+    }
+
+    /**
+     * Which of the selected columns are numeric in the table, so file values in them are compared as numbers.
+     */
+    private boolean[] numericColumns(String selectSql, int count) throws SQLException {
+        boolean[] numeric = new boolean[count];
+        try (DbConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement();
+             ResultSet rs = stmt.executeQuery(selectSql + " WHERE 1 = 0")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 0; i < count; i++) {
+                switch (meta.getColumnType(i + 1)) {
+                    case Types.TINYINT:
+                    case Types.SMALLINT:
+                    case Types.INTEGER:
+                    case Types.BIGINT:
+                    case Types.DECIMAL:
+                    case Types.NUMERIC:
+                    case Types.REAL:
+                    case Types.FLOAT:
+                    case Types.DOUBLE:
+                        numeric[i] = true;
+                        break;
+                    default:
+                        numeric[i] = false;
+                }
+            }
+        }
+        return numeric;
+    }
+
+    /**
+     * One query per key range when the key is an integer, about four per thread so uneven ranges balance out, plus
+     * one for rows with a NULL key.
+     */
+    private List<String> keyRanges(String selectSql) throws SQLException {
+        long min;
+        long max;
+        try (DbConnectionPool.Lease lease = pool.lease();
+             Statement stmt = lease.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table)) {
+            rs.next();
+            Object low = rs.getObject(1);
+            Object high = rs.getObject(2);
+            if (!isIntegral(low) || !isIntegral(high)) {
+                return Collections.singletonList(selectSql);
+            }
+            min = ((Number) low).longValue();
+            max = ((Number) high).longValue();
+        }
+        int chunks = threads * 4;
+        long width = Math.max(1, (max - min) / chunks + 1);
+        List<String> ranges = new ArrayList<>();
+        for (long from = min; from <= max; from += width) {
+            long to = from + width - 1;
+            if (to >= max || to < from) { // Last range, or overflow near Long.MAX_VALUE
+                ranges.add(selectSql + " WHERE " + keyColumn + " >= " + from);
+                break;
+            }
+            ranges.add(selectSql + " WHERE " + keyColumn + " BETWEEN " + from + " AND " + to);
+        }
+        // No range covers a NULL key, but the single scan spills those rows too (under key "")
+        ranges.add(selectSql + " WHERE " + keyColumn + " IS NULL");
+        return ranges;
+    }
+
+    private long spillTable(String rangeSql, int keyIndex, SpillFiles actual) throws Exception {
+        long rows = 0;
+        try (DbConnectionPool.Lease lease = pool.lease()) {
+            DbLoadGovernor.Permit permit = DbLoadGovernor.acquire(DbLoadGovernor.dataSourceOf(lease.connection()),
+                    DbLoadGovernor.NO_DEADLINE);
+            try (PreparedStatement stmt = lease.connection().prepareStatement(rangeSql)) {
+                stmt.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int count = rs.getMetaData().getColumnCount();
+                    String[] values = new String[count];
+                    while (rs.next()) {
+                        for (int i = 0; i < count; i++) {
+                            values[i] = canonical(rs.getObject(i + 1), false);
+                        }
+                        actual.write(values[keyIndex], values);
+                        rows++;
+                    }
+                }
+            } finally {
+                permit.close();
+            }
+        }
+        return rows;
+    }
+
+    private long spillFile(FixtureRows rows, int keyIndex, boolean[] numeric, SpillFiles expected) throws IOException {
+        long count = 0;
+        String[] values = new String[numeric.length];
+        Object[] row;
+        while ((row = rows.next()) != null) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = canonical(row[i], numeric[i]);
+            }
+            if (values[keyIndex] == null) {
+                throw new IOException("Expected row " + (count + 1) + " has no " + keyColumn);
+            }
+            expected.write(values[keyIndex], values);
+            count++;
+        }
+        return count;
+    }
+
+    private static void diffPartition(Path expectedFile, Path actualFile, Differences differences) throws IOException {
+        Map<String, Long> expectedHashes = new HashMap<>();
+        try (SpillReader in = new SpillReader(expectedFile)) {
+            while (in.next()) {
+                if (expectedHashes.put(in.key, in.hash) != null) {
+                    throw new IOException("Duplicate key " + in.key + " in expected dataset");
+                }
+            }
+        }
+
+        Set<String> sampledKeys = new HashSet<>(); // Expected values are fetched for these in a second pass
+        Map<String, String[]> mismatchedActual = new HashMap<>();
+        try (SpillReader in = new SpillReader(actualFile)) {
+            while (in.next()) {
+                Long expectedHash = expectedHashes.remove(in.key);
+                if (expectedHash == null) {
+                    differences.extra(in.key, in.values);
+                } else if (expectedHash != in.hash && differences.countMismatch()) {
+                    sampledKeys.add(in.key);
+                    mismatchedActual.put(in.key, in.values);
+                }
+            }
+        }
+        for (String missingKey : expectedHashes.keySet()) {
+            if (differences.countMissing()) {
+                sampledKeys.add(missingKey);
+            }
+        }
+
+        if (!sampledKeys.isEmpty()) {
+            try (SpillReader in = new SpillReader(expectedFile)) {
+                while (in.next()) {
+                    if (sampledKeys.contains(in.key)) {
+                        String[] actualValues = mismatchedActual.get(in.key);
+                        if (actualValues == null) {
+                            differences.missing(in.key, in.values);
+                        } else {
+                            differences.mismatched(in.key, in.values, actualValues);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Text form used for comparing and hashing; numbers lose trailing zeros.
+     */
+    private static String canonical(Object value, boolean numericColumn) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return canonicalNumber(value.toString());
+        }
+        if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : (byte[]) value) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        String text = value.toString();
+        return numericColumn ? canonicalNumber(text.trim()) : text;
+    }
+
+    private static String canonicalNumber(String text) {
+        try {
+            BigDecimal number = new BigDecimal(text);
+            return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return text; // NaN, Infinity, or not a number at all; compared as written
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the values, with separators so that ("ab", "c") and ("a", "bc") differ.
+     */
+    private static long hash(String[] values) {
+        long hash = FNV_OFFSET;
+        for (String value : values) {
+            if (value == null) {
+                hash = (hash ^ 0xff) * FNV_PRIME;
+            } else {
+                for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                    hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                }
+            }
+            hash = (hash ^ 0xfe) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0
+                && ((BigDecimal) value).abs().compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) < 0;
+    }
+
+    private static int indexOf(List<String> columns, String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Dataset comparison interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Dataset comparison failed", cause);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Could not delete spill directory " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * One spill file per partition; rows are key, hash and values. Writers on several threads share the files.
+     */
+    private static final class SpillFiles implements AutoCloseable {
+
+        private final Path[] files;
+        private final DataOutputStream[] outs;
+
+        private SpillFiles(Path dir, String side, int partitions) throws IOException {
+            this.files = new Path[partitions];
+            this.outs = new DataOutputStream[partitions];
+            for (int p = 0; p < partitions; p++) {
+                files[p] = dir.resolve(side + "-" + p + ".bin");
+                outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[p]), SPILL_BUFFER_BYTES));
+            }
+        }
+
+        private void write(String key, String[] values) throws IOException {
+            String rowKey = key == null ? "" : key;
+            DataOutputStream out = outs[(rowKey.hashCode() & Integer.MAX_VALUE) % outs.length];
+            long rowHash = hash(values);
+            synchronized (out) {
+                writeString(out, rowKey);
+                out.writeLong(rowHash);
+                out.writeInt(values.length);
+                for (String value : values) {
+                    writeString(out, value);
+                }
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void finish() throws IOException {
+            for (DataOutputStream out : outs) {
+                out.flush();
+            }
+        }
+
+        private Path file(int partition) {
+            return files[partition];
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataOutputStream out : outs) {
+                out.close();
+            }
+        }
+    }
+
+    private static final class SpillReader implements AutoCloseable {
+
+        private final DataInputStream in;
+        private String key;
+        private long hash;
+        private String[] values;
+
+        private SpillReader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), SPILL_BUFFER_BYTES));
+        }
+
+        private boolean next() throws IOException {
+            try {
+                key = readString();
+            } catch (EOFException e) {
+                return false;
+            }
+            hash = in.readLong();
+            values = new String[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            return true;
+        }
+
+        private String readString() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Counts of every difference, with the values of the first few of each kind.
+     */
+    private static final class Differences {
+
+        private final int sampleLimit;
+        private final List<String> columns;
+        private final AtomicLong missing = new AtomicLong();
+        private final AtomicLong extra = new AtomicLong();
+        private final AtomicLong mismatched = new AtomicLong();
+        private final List<RowDifference> samples = Collections.synchronizedList(new ArrayList<>());
+
+        private Differences(int sampleLimit, List<String> columns) {
+            this.sampleLimit = sampleLimit;
+            this.columns = columns;
+        }
+
+        /**
+         * @return true if this one should be sampled
+         */
+        private boolean countMissing() {
+            return missing.incrementAndGet() <= sampleLimit;
+        }
+
+        private boolean countMismatch() {
+            return mismatched.incrementAndGet() <= sampleLimit;
+        }
+
+        private void extra(String key, String[] actual) {
+            if (extra.incrementAndGet() <= sampleLimit) {
+                samples.add(new RowDifference(RowDifference.Kind.EXTRA, key, null, toMap(actual)));
+            }
+        }
+
+        private void missing(String key, String[] expected) {
+            samples.add(new RowDifference(RowDifference.Kind.MISSING, key, toMap(expected), null));
+        }
+
+        private void mismatched(String key, String[] expected, String[] actual) {
+            samples.add(new RowDifference(RowDifference.Kind.MISMATCHED, key, toMap(expected), toMap(actual)));
+        }
+
+        private Map<String, String> toMap(String[] values) {
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                row.put(columns.get(i), values[i]);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * One row that differs; values are in the canonical text form that was compared.
+     */
+    public static final class RowDifference {
+
+        public enum Kind {
+            MISSING,
+            EXTRA,
+            MISMATCHED
+        }
+
+        private final Kind kind;
+        private final String key;
+        private final Map<String, String> expected;
+        private final Map<String, String> actual;
+
+        private RowDifference(Kind kind, String key, Map<String, String> expected, Map<String, String> actual) {
+            this.kind = kind;
+            this.key = key;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        /**
+         * Expected values, or null for an extra row.
+         */
+        public Map<String, String> expected() {
+            return expected;
+        }
+
+        /**
+         * Values in the table, or null for a missing row.
+         */
+        public Map<String, String> actual() {
+            return actual;
+        }
+
+        /**
+         * Columns whose values differ, for a mismatched row.
+         */
+        public List<String> differingColumns() {
+            List<String> differing = new ArrayList<>();
+            if (expected != null && actual != null) {
+                for (Map.Entry<String, String> column : expected.entrySet()) {
+                    if (!Objects.equals(column.getValue(), actual.get(column.getKey()))) {
+                        differing.add(column.getKey());
+                    }
+                }
+            }
+            return differing;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case MISSING:
+                    return "missing " + key + " " + expected;
+                case EXTRA:
+                    return "extra " + key + " " + actual;
+                default:
+                    StringBuilder text = new StringBuilder("mismatched " + key + ":");
+                    for (String column : differingColumns()) {
+                        text.append(' ').append(column).append(" expected ").append(expected.get(column))
+                                .append(" but was ").append(actual.get(column)).append(';');
+                    }
+                    return text.toString();
+            }
+        }
+    }
+
+    /**
+     * Outcome of one comparison.
+     */
+    public static final class Report {
+
+        private final String table;
+        private final long expectedRows;
+        private final long actualRows;
+        private final long missing;
+        private final long extra;
+        private final long mismatched;
+        private final List<RowDifference> samples;
+        private final Duration elapsed;
+
+        private Report(String table, long expectedRows, long actualRows, Differences differences, Duration elapsed) {
+            this.table = table;
+            this.expectedRows = expectedRows;
+            this.actualRows = actualRows;
+            this.missing = differences.missing.get();
+            this.extra = differences.extra.get();
+            this.mismatched = differences.mismatched.get();
+            List<RowDifference> sorted = new ArrayList<>(differences.samples);
+            sorted.sort(Comparator.comparing(RowDifference::kind).thenComparing(RowDifference::key));
+            this.samples = Collections.unmodifiableList(sorted);
+            this.elapsed = elapsed;
+        }
+
+        public boolean matches() {
+            return missing == 0 && extra == 0 && mismatched == 0;
+        }
+
+        public long expectedRows() {
+            return expectedRows;
+        }
+
+        public long actualRows() {
+            return actualRows;
+        }
+
+        public long missing() {
+            return missing;
+        }
+
+        public long extra() {
+            return extra;
+        }
+
+        public long mismatched() {
+            return mismatched;
+        }
+
+        /**
+         * Up to the sample limit of each kind of difference.
+         */
+        public List<RowDifference> samples() {
+            return samples;
+        }
+
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                    "%s: %d expected, %d actual rows; %d missing, %d extra, %d mismatched (%.1fs)",
+                    table, expectedRows, actualRows, missing, extra, mismatched, elapsed.toNanos() / 1e9));
+            for (RowDifference sample : samples) {
+                text.append(System.lineSeparator()).append("  ").append(sample);
+            }
+            return text.toString();
+        }
+    }
+}
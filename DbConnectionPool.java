@@ -0,0 +1,284 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small bounded JDBC connection pool for the polling helpers.
+ * Each waiter leases a connection for one poll, and prepared statements are cached per SQL string
+ * on the pooled connection. A returned connection has any open transaction rolled back and its auto-commit,
+ * read-only and isolation settings put back as they were when it was opened, so a borrower that changed them
+ * (e.g. {@link FixtureLoader}, {@link DbFixture}) cannot leak them to the next one. Only connections that sat
+ * idle for {@value #VALIDATE_AFTER_IDLE_SECONDS} seconds or more are validated with a round trip before reuse.
+ */
+public class DbConnectionPool implements AutoCloseable {
+
+    private static final int DEFAULT_LEASE_TIMEOUT_SECONDS = 30;
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 1;
+    private static final int VALIDATE_AFTER_IDLE_SECONDS = 30;
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final long leaseTimeoutMillis;
+    private volatile String dataSource;
+    private volatile boolean closed;
+
+    public DbConnectionPool(String url, String user, String password, int maxConnections) {
+        this(url, user, password, maxConnections, TimeUnit.SECONDS.toMillis(DEFAULT_LEASE_TIMEOUT_SECONDS));
+    }
+
+    public DbConnectionPool(String url, String user, String password, int maxConnections, long leaseTimeoutMillis) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.permits = new Semaphore(maxConnections, true);
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    /**
+     * Leases a connection, reusing an idle one when available. Blocks while the pool is exhausted.
+     * Recorded as a {@link WaitEvents.ConnectionLease} event.
+     *
+     * @return lease to be closed (try-with-resources) to hand the connection back
+     */
+    public Lease lease() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        WaitEvents.ConnectionLease event = WaitEvents.beginLease();
+        String outcome = WaitEvents.ERROR;
+        try {
+            Lease lease = acquire();
+            outcome = WaitEvents.LEASED;
+            return lease;
+        } catch (SQLTimeoutException e) {
+            outcome = WaitEvents.TIMEOUT;
+            throw e;
+        } finally {
+            event.finish(url, outcome);
+        }
+    }
+
+    /**
+     * Name {@link DbLoadGovernor#dataSourceOf} gives this pool's connections, so that waits through the pool and
+     * waits on a plain connection to the same database are governed and coalesced together. Leases a connection
+     * the first time it is called.
+     */
+    public String dataSource() throws SQLException {
+        String name = dataSource;
+        if (name == null) {
+            try (Lease lease = lease()) {
+                name = DbLoadGovernor.dataSourceOf(lease.connection());
+            }
+            dataSource = name;
+        }
+        return name;
+    }
+
+    private Lease acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timeout: no pooled connection available after waiting for " + leaseTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null && !pooled.isUsable()) {
+                pooled.closeQuietly(); // Dropped by the server while idle; try the next one
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+            }
+            return new Lease(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (!closed && pooled.reset()) {
+                idle.offerFirst(pooled);
+            } else {
+                pooled.closeQuietly();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closeQuietly();
+        }
+    }
+
+    /**
+     * A connection checked out of the pool. Not meant to be shared between threads.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private PooledConnection pooled;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        public Connection connection() {
+            return checkedOut().connection;
+        }
+
+        /**
+         * Returns a cached PreparedStatement for the SQL string with its parameters cleared.
+         * The statement is owned by the pool and must not be closed by the caller.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return checkedOut().prepare(sql);
+        }
+
+        @Override
+        public void close() {
+            if (pooled != null) {
+                PooledConnection returned = pooled;
+                pooled = null;
+                release(returned);
+            }
+        }
+
+        private PooledConnection checkedOut() {
+            if (pooled == null) {
+                throw new IllegalStateException("Lease has already been returned to the pool");
+            }
+            return pooled;
+        }
+    }
+
+    private static final class PooledConnection {
+
+        private final Connection connection;
+        private final boolean initialAutoCommit;
+        private final boolean initialReadOnly;
+        private final int initialIsolation;
+        private long idleSinceNanos;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() > MAX_CACHED_STATEMENTS) {
+                            closeQuietly(eldest.getValue());
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        private PooledConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            try {
+                this.initialAutoCommit = connection.getAutoCommit();
+                this.initialReadOnly = connection.isReadOnly();
+                this.initialIsolation = connection.getTransactionIsolation();
+            } catch (SQLException e) {
+                closeQuietly();
+                throw e;
+            }
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null || ps.isClosed()) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+        /**
+         * Puts the connection back in the state it was opened in; false if it should be discarded instead.
+         */
+        private boolean reset() {
+            try {
+                if (connection.isClosed()) {
+                    return false;
+                }
+                boolean autoCommit = connection.getAutoCommit();
+                if (!autoCommit) {
+                    connection.rollback(); // Never hand an open transaction to the next borrower
+                }
+                if (autoCommit != initialAutoCommit) {
+                    connection.setAutoCommit(initialAutoCommit);
+                }
+                if (connection.isReadOnly() != initialReadOnly) {
+                    connection.setReadOnly(initialReadOnly);
+                }
+                if (connection.getTransactionIsolation() != initialIsolation) {
+                    connection.setTransactionIsolation(initialIsolation);
+                }
+                idleSinceNanos = System.nanoTime();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Validates with a round trip only when the connection has been idle long enough to have been dropped.
+         */
+        private boolean isUsable() {
+            if (System.nanoTime() - idleSinceNanos < TimeUnit.SECONDS.toNanos(VALIDATE_AFTER_IDLE_SECONDS)) {
+                return true;
+            }
+            try {
+                return connection.isValid(HEALTH_CHECK_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void closeQuietly() {
+            for (PreparedStatement ps : statements.values()) {
+                closeQuietly(ps);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Failed to close pooled connection: " + e.getMessage());
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                // Statement is being discarded anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Captures database state before a test and puts it back afterwards, on the test's own connection:
+ * <pre>
+ * try (DbFixture fixture = DbFixture.begin(conn, "CLIENT_DETAILS")) {
+ *     fixture.snapshotRows("CLIENT_DETAILS", "CLNT_ID", clientId); // only needed where DDL is not transactional
+ *     fixture.alter(ALTER_CLNT_COLUMN, ROLLBACK_CLNT_COLUMN);
+ *     // test logic on conn
+ * } // state restored here
+ * </pre>
+ * Everything runs in one transaction opened at a savepoint, so rows written by the test disappear with a rollback
+ * instead of clean-up SQL. Where the database has transactional DDL (PostgreSQL, SQL Server, Derby) schema changes
+ * are rolled back the same way.
+ * <p>
+ * Where DDL commits the transaction (Oracle, MySQL, H2) there is no rollback to be had once {@link #alter} has run:
+ * the undo statements run in reverse order, and only the rows declared with {@link #snapshotRows} are put back,
+ * from a copy taken before the schema change. That is no cheaper than explicit clean-up, so on those databases
+ * prefer {@link WorkerNamespace#isolateTable} for schema changes. To fail fast rather than leave rows behind,
+ * {@link #alter} refuses to run there when the fixture names tables the test writes to but no rows to restore.
+ * <p>
+ * Failures are not swallowed: a restore failure is thrown from {@link #close()}, or added as suppressed to the
+ * exception that ended the test. Closing also drops the {@link TerminalStateCache} entries of the fixture's tables,
+ * and of this worker's copies of them, so close the fixture before {@link WorkerNamespace#release}.
+ */
+public final class DbFixture implements AutoCloseable {
+
+    private final Connection conn;
+    private final boolean previousAutoCommit;
+    private final boolean transactionalDdl;
+    private final Savepoint savepoint;
+    private final List<String> tables;
+    private final List<RowSnapshot> snapshots = new ArrayList<>();
+    private final Deque<String> undoStatements = new ArrayDeque<>();
+    private boolean committedByDdl;
+    private boolean closed;
+
+    private DbFixture(Connection conn, List<String> tables) throws SQLException {
+        this.conn = conn;
+        this.tables = tables;
+        this.previousAutoCommit = conn.getAutoCommit();
+        this.transactionalDdl = !conn.getMetaData().dataDefinitionCausesTransactionCommit()
+                && conn.getMetaData().supportsDataDefinitionAndDataManipulationTransactions();
+        conn.setAutoCommit(false);
+        this.savepoint = conn.setSavepoint("DB_FIXTURE");
+    }
+
+    /**
+     * Opens a fixture on {@code conn}.
+     *
+     * @param tables tables the test writes to; their {@link TerminalStateCache} entries are dropped on close
+     */
+    public static DbFixture begin(Connection conn, String... tables) throws SQLException {
+        List<String> names = new ArrayList<>();
+        for (String table : tables) {
+            names.add(WaitExpectation.requireTableName(table));
+        }
+        return new DbFixture(conn, Collections.unmodifiableList(names));
+    }
+
+    /**
+     * Copies the rows of {@code table} whose {@code keyColumn} is one of {@code keys}, to be put back on close if a
+     * schema change commits the transaction. Declare every key the test inserts, updates or deletes; rows with
+     * those keys that the test adds are removed again. Not needed where DDL is transactional.
+     *
+     * @throws IllegalStateException if a schema change has already committed the test's changes
+     */
+    public void snapshotRows(String table, String keyColumn, Object... keys) throws SQLException {
+        if (committedByDdl) {
+            throw new IllegalStateException("Rows must be captured before the first schema change: " + table);
+        }
+        if (!transactionalDdl && keys.length > 0) {
+            snapshots.add(RowSnapshot.capture(conn, WaitExpectation.requireTableName(table),
+                    WaitExpectation.requireIdentifier(keyColumn), Arrays.asList(keys)));
+        }
+    }
+
+    /**
+     * Runs a schema change, remembering how to undo it when DDL is not transactional.
+     */
+    public void alter(String ddl, String undoDdl) throws SQLException {
+        if (!transactionalDdl && !committedByDdl && snapshots.isEmpty() && !tables.isEmpty()) {
+            throw new SQLException("DDL commits the transaction on " + conn.getMetaData().getDatabaseProductName()
+                    + ", so rows written to " + tables + " could not be rolled back; declare them with snapshotRows"
+                    + " or isolate the table with WorkerNamespace.isolateTable");
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(ddl);
+        }
+        if (!transactionalDdl) {
+            committedByDdl = true;
+            undoStatements.push(undoDdl);
+        }
+    }
+
+    public Connection connection() {
+        return conn;
+    }
+
+    /**
+     * Rolls back or restores the test's changes and returns the connection to its previous auto-commit mode.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (committedByDdl) {
+                // The savepoint went away with the implicit commit
+                conn.rollback();
+                SQLException undoFailure = null;
+                try {
+                    undoSchemaChanges();
+                } catch (SQLException e) {
+                    undoFailure = e; // The rows the DDL committed still have to go
+                }
+                try {
+                    for (RowSnapshot snapshot : snapshots) {
+                        snapshot.restore(conn);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    try {
+                        conn.rollback(); // Rather than have the auto-commit reset below commit half a restore
+                    } catch (SQLException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                    if (undoFailure != null) {
+                        e.addSuppressed(undoFailure);
+                    }
+                    throw e;
+                }
+                if (undoFailure != null) {
+                    throw undoFailure;
+                }
+            } else if (previousAutoCommit) {
+                conn.rollback();
+            } else {
+                conn.rollback(savepoint); // Leave the caller's own transaction as it was
+            }
+        } finally {
+            conn.setAutoCommit(previousAutoCommit);
+            // Entities the test drove to a terminal state may have just been rolled back; other workers' tables keep theirs
+            for (String table : tables) {
+                TerminalStateCache.invalidateTable(table);
+                // Waits on this thread cache under the worker's copy, e.g. CLIENT_DETAILS_W2
+                TerminalStateCache.invalidateTable(WorkerNamespace.table(table));
+            }
+        }
+    }
+
+    private void undoSchemaChanges() throws SQLException {
+        SQLException failure = null;
+        while (!undoStatements.isEmpty()) {
+            String undo = undoStatements.pop();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(undo);
+            } catch (SQLException e) {
+                // Keep going so later changes are still undone, then report every failure
+                SQLException wrapped = new SQLException("Failed to undo schema change with: " + undo, e);
+                if (failure == null) {
+                    failure = wrapped;
+                } else {
+                    failure.addSuppressed(wrapped);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * In-memory copy of the rows of one table with the given keys.
+     */
+    private static final class RowSnapshot {
+
+        private final String table;
+        private final String keyColumn;
+        private final List<Object> keys;
+        private final List<String> columns;
+        private final List<Object[]> rows;
+
+        private RowSnapshot(String table, String keyColumn, List<Object> keys, List<String> columns, List<Object[]> rows) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+            this.keys = keys;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        static RowSnapshot capture(Connection conn, String table, String keyColumn, List<Object> keys) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM " + table + keyFilter(keyColumn, keys))) {
+                bindKeys(ps, keys);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    List<String> columns = new ArrayList<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        columns.add(meta.getColumnName(i));
+                    }
+                    List<Object[]> rows = new ArrayList<>();
+                    while (rs.next()) {
+                        Object[] row = new Object[columns.size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        rows.add(row);
+                    }
+                    return new RowSnapshot(table, keyColumn, keys, columns, rows);
+                }
+            }
+        }
+
+        void restore(Connection conn) throws SQLException {
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + table + keyFilter(keyColumn, keys))) {
+                bindKeys(ps, keys);
+                ps.executeUpdate();
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            StringBuilder values = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns.get(i));
+                values.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(") VALUES (").append(values).append(")");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                for (Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        ps.setObject(i + 1, row[i]);
+                    }
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        private static String keyFilter(String keyColumn, List<Object> keys) {
+            StringBuilder filter = new StringBuilder(" WHERE ").append(keyColumn).append(" IN (");
+            for (int i = 0; i < keys.size(); i++) {
+                filter.append(i == 0 ? "?" : ", ?");
+            }
+            return filter.append(")").toString();
+        }
+
+        private static void bindKeys(PreparedStatement ps, List<Object> keys) throws SQLException {
+            for (int i = 0; i < keys.size(); i++) {
+                ps.setObject(i + 1, keys.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide limit on the queries the wait helpers send to each data source: at most N concurrent queries and
+ * a queries-per-second budget. Polls that cannot run yet queue, and the one closest to its wait's deadline goes
+ * first, so a burst of fresh waits cannot starve one that is about to time out. Keeping polling load bounded
+ * leaves the database free to apply the writes the tests are waiting for. Queued polls hold no thread: permits are
+ * granted by completing a future ({@link #acquireAsync}), and the blocking {@link #acquire} merely waits on it.
+ * <pre>
+ * DbLoadGovernor.Permit permit = DbLoadGovernor.acquire(DbLoadGovernor.dataSourceOf(conn), deadlineMillis);
+ * try {
+ *     ResultSet rs = ps.executeQuery();
+ * } finally {
+ *     permit.close();
+ * }
+ * </pre>
+ * Defaults come from the {@code dbwait.governor.maxConcurrent} ({@value #DEFAULT_MAX_CONCURRENT}) and
+ * {@code dbwait.governor.qps} ({@value #DEFAULT_QUERIES_PER_SECOND}) system properties and apply to every data
+ * source; {@link #configure} overrides one data source and should be called before the suite starts.
+ */
+public final class DbLoadGovernor {
+
+    public static final String MAX_CONCURRENT_PROPERTY = "dbwait.governor.maxConcurrent";
+    public static final String QUERIES_PER_SECOND_PROPERTY = "dbwait.governor.qps";
+    public static final int DEFAULT_MAX_CONCURRENT = 8;
+    public static final double DEFAULT_QUERIES_PER_SECOND = 50;
+
+    /**
+     * Deadline for queries that are not part of a timed wait; they run after every query that has one.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final ConcurrentMap<String, Limiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final AtomicLong QUEUED_MILLIS = new AtomicLong();
+    private static final AtomicLong QUEUED_QUERIES = new AtomicLong();
+
+    private DbLoadGovernor() {
+    }
+
+    /**
+     * Sets the limits for one data source, as named by {@link #dataSourceOf(Connection)}.
+     */
+    public static void configure(String dataSource, int maxConcurrentQueries, double queriesPerSecond) {
+        LIMITERS.put(dataSource, new Limiter(maxConcurrentQueries, queriesPerSecond));
+    }
+
+    /**
+     * Blocks until a query may run against {@code dataSource}; close the permit once the query has finished.
+     * Only for callers polling on their own thread: a wait on {@link AsyncDbWait} should use
+     * {@link AsyncDbWait#waitUntilGoverned}, which queues for the permit without holding a check thread.
+     *
+     * @param deadlineMillis  when the wait issuing the query gives up (epoch millis); earlier deadlines go first
+     * @throws TimeoutException if {@code deadlineMillis} passes first; the place in the queue is given up
+     */
+    public static Permit acquire(String dataSource, long deadlineMillis) throws InterruptedException, TimeoutException {
+        CompletableFuture<Permit> permit = acquireAsync(dataSource, deadlineMillis);
+        try {
+            if (deadlineMillis == NO_DEADLINE) {
+                return permit.get();
+            }
+            return permit.get(Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            withdraw(permit);
+            throw e;
+        } catch (TimeoutException e) {
+            withdraw(permit);
+            throw new TimeoutException("No query permit for " + dataSource + " before the wait's deadline");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit request failed", e.getCause());
+        }
+    }
+
+    private static void withdraw(CompletableFuture<Permit> permit) {
+        if (!permit.cancel(false)) {
+            permit.join().close(); // Granted just now; hand it straight back
+        }
+    }
+
+    /**
+     * Queues for a permit without blocking. The future completes, on whichever thread freed the permit or on the
+     * {@link AsyncDbWait} timer, once a query may run; cancelling it gives up the place in the queue. Keep what
+     * runs on completion short: hand the query to an executor rather than running it there.
+     *
+     * @param deadlineMillis  when the wait issuing the query gives up (epoch millis); earlier deadlines go first
+     */
+    public static CompletableFuture<Permit> acquireAsync(String dataSource, long deadlineMillis) {
+        return limiterFor(dataSource).enqueue(deadlineMillis);
+    }
+
+    /**
+     * A permit if a query may run against {@code dataSource} right now, without queueing, otherwise null.
+     * For periodic work that would rather skip a round than wait.
+     */
+    public static Permit tryAcquire(String dataSource) {
+        return limiterFor(dataSource).tryAcquire();
+    }
+
+    /**
+     * Wraps a poll check so every call holds a permit while it queries. Blocks the calling thread while it queues,
+     * and throws {@link TimeoutException} if the deadline passes first, see {@link #acquire}.
+     */
+    public static <T> Callable<T> governed(String dataSource, long deadlineMillis, Callable<T> query) {
+        return () -> {
+            Permit permit = acquire(dataSource, deadlineMillis);
+            try {
+                return query.call();
+            } finally {
+                permit.close();
+            }
+        };
+    }
+
+    /**
+     * Name the governor uses for the data source behind {@code conn}: its JDBC URL.
+     */
+    public static String dataSourceOf(Connection conn) {
+        try {
+            return conn.getMetaData().getURL();
+        } catch (SQLException e) {
+            return "connection@" + System.identityHashCode(conn);
+        }
+    }
+
+    private static Limiter limiterFor(String dataSource) {
+        return LIMITERS.computeIfAbsent(dataSource, k -> new Limiter(
+                Integer.getInteger(MAX_CONCURRENT_PROPERTY, DEFAULT_MAX_CONCURRENT),
+                Double.parseDouble(System.getProperty(QUERIES_PER_SECOND_PROPERTY,
+                        String.valueOf(DEFAULT_QUERIES_PER_SECOND)))));
+    }
+
+    /**
+     * Total time queries spent queued for a permit, across all data sources.
+     */
+    public static long queuedMillis() {
+        return QUEUED_MILLIS.get();
+    }
+
+    /**
+     * Number of queries that had to queue for a permit.
+     */
+    public static long queuedQueries() {
+        return QUEUED_QUERIES.get();
+    }
+
+    /**
+     * Right to run one query; closing it twice is harmless.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final Limiter limiter;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+    }
+
+    /**
+     * Concurrency cap plus a token bucket refilled at {@code queriesPerSecond}, holding at most one token per
+     * concurrent query so an idle data source cannot bank a large burst. Tickets wait in deadline order; nothing
+     * blocks while they do.
+     */
+    private static final class Limiter {
+
+        private final int maxConcurrent;
+        private final double tokensPerNano;
+        private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+        private int inFlight;
+        private double tokens;
+        private long refilledAtNanos = System.nanoTime();
+        private long nextSequence;
+        private boolean refillScheduled;
+
+        private Limiter(int maxConcurrent, double queriesPerSecond) {
+            if (maxConcurrent < 1 || !(queriesPerSecond > 0)) {
+                throw new IllegalArgumentException("Need at least one concurrent query and a positive query rate, got "
+                        + maxConcurrent + " and " + queriesPerSecond);
+            }
+            this.maxConcurrent = maxConcurrent;
+            this.tokensPerNano = queriesPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = maxConcurrent;
+        }
+
+        private CompletableFuture<Permit> enqueue(long deadlineMillis) {
+            Ticket ticket;
+            synchronized (this) {
+                ticket = new Ticket(deadlineMillis, nextSequence++);
+                queue.add(ticket);
+            }
+            // A cancelled request leaves the queue at once rather than when it reaches the front
+            ticket.permit.whenComplete((permit, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        queue.remove(ticket);
+                    }
+                    dispatch();
+                }
+            });
+            dispatch();
+            return ticket.permit;
+        }
+
+        private Permit tryAcquire() {
+            synchronized (this) {
+                refill();
+                if (!queue.isEmpty() || inFlight >= maxConcurrent || tokens < 1) {
+                    return null;
+                }
+                inFlight++;
+                tokens -= 1;
+            }
+            return new Permit(this);
+        }
+
+        /**
+         * Grants permits to the tickets at the front of the queue while there is room and a token, outside the lock.
+         */
+        private void dispatch() {
+            List<Ticket> granted = new ArrayList<>();
+            long nanosToToken = 0;
+            synchronized (this) {
+                refill();
+                while (!queue.isEmpty() && inFlight < maxConcurrent && tokens >= 1) {
+                    granted.add(queue.poll());
+                    inFlight++;
+                    tokens -= 1;
+                }
+                if (!queue.isEmpty() && inFlight < maxConcurrent && !refillScheduled) {
+                    refillScheduled = true;
+                    nanosToToken = Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+                }
+            }
+            if (nanosToToken > 0) {
+                AsyncDbWait.scheduler().schedule(() -> {
+                    synchronized (this) {
+                        refillScheduled = false;
+                    }
+                    dispatch();
+                }, nanosToToken, TimeUnit.NANOSECONDS);
+            }
+            for (Ticket ticket : granted) {
+                Permit permit = new Permit(this);
+                if (ticket.permit.complete(permit)) {
+                    long queuedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.queuedAtNanos);
+                    if (queuedMillis > 0) {
+                        QUEUED_MILLIS.addAndGet(queuedMillis);
+                        QUEUED_QUERIES.incrementAndGet();
+                    }
+                } else {
+                    permit.close(); // Cancelled while it was being granted
+                }
+            }
+        }
+
+        private void release() {
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(maxConcurrent, tokens + (now - refilledAtNanos) * tokensPerNano);
+            refilledAtNanos = now;
+        }
+    }
+
+    private static final class Ticket implements Comparable<Ticket> {
+
+        private final long deadlineMillis;
+        private final long sequence;
+        private final long queuedAtNanos = System.nanoTime();
+        private final CompletableFuture<Permit> permit = new CompletableFuture<>();
+
+        private Ticket(long deadlineMillis, long sequence) {
+            this.deadlineMillis = deadlineMillis;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byDeadline = Long.compare(deadlineMillis, other.deadlineMillis);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,13 +1,30 @@
+package org.example;
+
 import org.awaitility.Awaitility;
+import org.awaitility.core.ConditionTimeoutException;
 
 import java.sql.*;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class DbWaitUtil {
 
     private static final int TIMEOUT_SECONDS = 30;
     private static final int POLL_INTERVAL_MILLIS = 1000;
+    private static final int MAX_IN_LIST_SIZE = 1000; // Oracle rejects IN lists longer than 1000
+    private static final PollStrategy DEFAULT_POLL_STRATEGY = PollStrategy.fixed(Duration.ofMillis(POLL_INTERVAL_MILLIS));
 
     /**
      * Waits for a specific row to be available in the database.
@@ -19,21 +36,321 @@ public class DbWaitUtil {
      * @param expectedValue   Expected value (e.g., "ONBOARDED")
      */
     public static void waitForRecord(Connection conn, String sql, String param, String columnLabel, String expectedValue) {
-        Awaitility.await()
-            .atMost(Duration.ofSeconds(TIMEOUT_SECONDS))
-            .pollInterval(Duration.ofMillis(POLL_INTERVAL_MILLIS))
-            .until(() -> recordExists(conn, sql, param, columnLabel, expectedValue));
+        waitForRecord(conn, sql, param, columnLabel, expectedValue,
+                LearnedPollStrategy.forQuery(DbLoadGovernor.dataSourceOf(conn), WorkerNamespace.rewrite(sql),
+                        DEFAULT_POLL_STRATEGY));
     }
 
-    private static boolean recordExists(Connection conn, String sql, String param, String columnLabel, String expectedValue) {
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, param);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                String value = rs.getString(columnLabel);
-                if (expectedValue.equalsIgnoreCase(value)) {
-                    return true;
+    /**
+     * Same as {@link #waitForRecord(Connection, String, String, String, String)} with a custom poll schedule,
+     * e.g. {@link PollStrategy#fastStartThenDecay} for tables that are usually written within milliseconds.
+     * <p>
+     * Identical waits running at the same time (same database, SQL, parameter and expected value) share one poll.
+     * It runs on the first waiter's thread and connection with the first waiter's poll schedule, and the other
+     * waiters block until it ends.
+     * <p>
+     * When a change notification source is running (see {@link ChangeNotificationHub}), the wait also re-checks as
+     * soon as a change to the queried table's row {@code param} is published; the poll schedule remains the fallback.
+     * <p>
+     * Values registered with {@link TerminalStateCache} are remembered once seen, and later waits for the same
+     * table, key and column return without querying.
+     * <p>
+     * Tables isolated for the calling worker with {@link WorkerNamespace#isolateTable} are replaced in {@code sql}
+     * by the worker's copy; this applies to every wait in this class.
+     * <p>
+     * Every poll, with its execute and fetch, is recorded as {@link WaitEvents} when Flight Recorder is running.
+     * <p>
+     * The timeout is {@value #TIMEOUT_SECONDS} seconds until {@link PollHistory} has enough waits for this query,
+     * then it is derived from their tail (see {@link LearnedPollStrategy#timeout(Duration)}).
+     *
+     * @throws ConditionTimeoutException if the record is not found within the timeout
+     */
+    public static void waitForRecord(Connection conn, String sql, String param, String columnLabel, String expectedValue,
+                                     PollStrategy pollStrategy) {
+        waitForRecord(conn, sql, param, WaitExpectation.equalToIgnoringCase(columnLabel, expectedValue), pollStrategy);
+    }
+
+    /**
+     * Waits until the keyed query returns a row matching {@code expectation}. The expectation is evaluated by the
+     * database (see {@link WaitExpectation#existsQuery}), so each poll fetches at most one row.
+     *
+     * @param conn            JDBC Connection
+     * @param sql             SQL query with one parameter (e.g., SELECT * FROM CLIENT_DETAILS WHERE CLNT_ID = ?)
+     * @param param           Parameter to set in PreparedStatement
+     * @param expectation     Column, operator and value to wait for (e.g., CLNT_STAT EQUALS ONBOARDED)
+     * @throws ConditionTimeoutException if no matching row appears within the timeout
+     */
+    public static void waitForRecord(Connection conn, String sql, String param, WaitExpectation expectation,
+                                     PollStrategy pollStrategy) {
+        String query = WorkerNamespace.rewrite(sql);
+        if (knownTerminal(query, param, expectation)) {
+            return;
+        }
+        String existsSql = existsQuery(conn, query, expectation);
+        Duration timeout = timeoutFor(DbLoadGovernor.dataSourceOf(conn), query);
+        boolean found = SingleFlightWait.await(waitKey(conn, null, query, param, expectation), timeout,
+                remaining -> awaitRecord(conn, query, existsSql, param, expectation, remaining, pollStrategy));
+        if (!found) {
+            throw new ConditionTimeoutException("Record with " + expectation + " not found for "
+                    + param + " within " + timeout.toMillis() + "ms");
+        }
+        rememberTerminal(query, param, expectation);
+    }
+
+    /**
+     * Waits until the keyed query's {@code expectation.column()} holds one of the success values, and gives up at
+     * once if it holds a failure value instead. Each poll reads just that column of at most one row. Coalescing,
+     * change notifications, {@link TerminalStateCache} and the timeout work as for
+     * {@link #waitForRecord(Connection, String, String, String, String, PollStrategy)}.
+     *
+     * @param expectation     success and failure values (e.g., CLNT_STAT ONBOARDED, failing on FAILED or REJECTED)
+     * @throws TerminalStateException    as soon as a failure value is read, with that value
+     * @throws ConditionTimeoutException if neither appears within the timeout
+     */
+    public static void waitForRecord(Connection conn, String sql, String param, StateExpectation expectation) {
+        waitForRecord(conn, sql, param, expectation,
+                LearnedPollStrategy.forQuery(DbLoadGovernor.dataSourceOf(conn), WorkerNamespace.rewrite(sql),
+                        DEFAULT_POLL_STRATEGY));
+    }
+
+    public static void waitForRecord(Connection conn, String sql, String param, StateExpectation expectation,
+                                     PollStrategy pollStrategy) {
+        String query = WorkerNamespace.rewrite(sql);
+        String table = WaitMetrics.tableOf(query);
+        if (expectation.reached(table, param, cachedState(query, param, expectation))) {
+            return;
+        }
+        Duration timeout = timeoutFor(DbLoadGovernor.dataSourceOf(conn), query);
+        boolean reached = SingleFlightWait.await(stateWaitKey(conn, null, query, param, expectation), timeout,
+                remaining -> awaitState(conn, query, param, expectation, remaining, pollStrategy));
+        if (!reached) {
+            throw new ConditionTimeoutException("Record with " + expectation + " not found for "
+                    + param + " within " + timeout.toMillis() + "ms");
+        }
+    }
+
+    /**
+     * Non-blocking version of {@link #waitForRecord(Connection, String, String, StateExpectation, PollStrategy)}.
+     * Polls run on {@link AsyncDbWait} check threads on {@code conn}, which must stay open until the future
+     * completes; only waits on the same connection share a poll.
+     *
+     * @return future completing with true on a success value, false on timeout, or exceptionally with
+     *         {@link TerminalStateException} on a failure value
+     */
+    public static CompletableFuture<Boolean> waitForRecordAsync(Connection conn, String sql, String param,
+                                                                StateExpectation expectation, PollStrategy pollStrategy) {
+        String query = WorkerNamespace.rewrite(sql);
+        String stateSql = stateQuery(conn, query, expectation.column());
+        return waitForStateAsync(stateWaitKey(conn, conn, query, param, expectation), query, param, expectation,
+                pollStrategy, () -> currentState(conn, stateSql, param));
+    }
+
+    /**
+     * Same as {@link #waitForRecordAsync(Connection, String, String, StateExpectation, PollStrategy)}, but every poll
+     * leases its own connection from {@code pool}, so identical waits share one poll whoever started it.
+     */
+    public static CompletableFuture<Boolean> waitForRecordAsync(DbConnectionPool pool, String sql, String param,
+                                                                StateExpectation expectation, PollStrategy pollStrategy)
+            throws SQLException {
+        String query = WorkerNamespace.rewrite(sql);
+        return waitForStateAsync(stateWaitKey(pool, query, param, expectation), query, param, expectation,
+                pollStrategy, () -> {
+                    try (DbConnectionPool.Lease lease = pool.lease()) {
+                        Connection conn = lease.connection();
+                        return currentState(conn, stateQuery(conn, query, expectation.column()), param);
+                    }
+                });
+    }
+
+    private static CompletableFuture<Boolean> waitForStateAsync(SingleFlightWait.WaitKey key, String query, String param,
+                                                                StateExpectation expectation, PollStrategy pollStrategy,
+                                                                Callable<String> state) {
+        String table = WaitMetrics.tableOf(query);
+        try {
+            if (expectation.reached(table, param, cachedState(query, param, expectation))) {
+                return CompletableFuture.completedFuture(true);
+            }
+        } catch (TerminalStateException e) {
+            CompletableFuture<Boolean> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return SingleFlightWait.join(key, timeoutFor(key.dataSource(), query),
+                remaining -> pollState(key.dataSource(), query, param, expectation, remaining, pollStrategy, state));
+    }
+
+    /**
+     * Same as {@link #waitForRecord(Connection, String, String, WaitExpectation, PollStrategy)}, but each poll runs
+     * on the replica or the primary as {@code router} decides (see {@link ReplicaRouter}). Routed waits are not
+     * coalesced with other waits.
+     *
+     * @throws ConditionTimeoutException if no matching row appears within the timeout
+     */
+    public static void waitForRecord(ReplicaRouter router, String sql, String param, WaitExpectation expectation,
+                                     PollStrategy pollStrategy) {
+        String query = WorkerNamespace.rewrite(sql);
+        String table = WaitMetrics.tableOf(query);
+        if (knownTerminal(query, param, expectation)) {
+            return;
+        }
+        String dataSource;
+        try {
+            dataSource = router.dataSource();
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not reach the primary of " + router, e);
+        }
+        Duration timeout = timeoutFor(dataSource, query);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(query).on(dataSource);
+        boolean found;
+        try {
+            found = router.waitUntil(conn -> {
+                long queryStart = metrics.startQuery();
+                try {
+                    // Traced inside the lease, so the poll event covers the routed query but not the lease
+                    return WaitEvents.traced(query, param,
+                            () -> recordExists(conn, existsQuery(conn, query, expectation), param, expectation)).call();
+                } finally {
+                    metrics.endQuery(queryStart);
                 }
+            }, timeout, pollStrategy, ChangeNotificationHub.topic(table, param)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Routed database wait interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        metrics.finish(found);
+        if (!found) {
+            throw new ConditionTimeoutException("Record with " + expectation + " not found for "
+                    + param + " within " + timeout.toMillis() + "ms (" + router + ")");
+        }
+        rememberTerminal(query, param, expectation);
+    }
+
+    /**
+     * Non-blocking version of {@link #waitForRecord(Connection, String, String, String, String)}.
+     * Polls run on {@link AsyncDbWait} check threads on {@code conn}, which must stay open until the future
+     * completes; only waits on the same connection share a poll.
+     *
+     * @return future completing with true when the record was found, false on timeout
+     */
+    public static CompletableFuture<Boolean> waitForRecordAsync(Connection conn, String sql, String param, String columnLabel,
+                                                                String expectedValue, PollStrategy pollStrategy) {
+        return waitForRecordAsync(conn, sql, param, WaitExpectation.equalToIgnoringCase(columnLabel, expectedValue),
+                pollStrategy);
+    }
+
+    /**
+     * Non-blocking version of {@link #waitForRecord(Connection, String, String, WaitExpectation, PollStrategy)}.
+     */
+    public static CompletableFuture<Boolean> waitForRecordAsync(Connection conn, String sql, String param,
+                                                                WaitExpectation expectation, PollStrategy pollStrategy) {
+        String query = WorkerNamespace.rewrite(sql);
+        String existsSql = existsQuery(conn, query, expectation);
+        return waitForRecordAsync(waitKey(conn, conn, query, param, expectation), query, param, expectation, pollStrategy,
+                () -> recordExists(conn, existsSql, param, expectation));
+    }
+
+    /**
+     * Same as {@link #waitForRecordAsync(Connection, String, String, WaitExpectation, PollStrategy)}, but every poll
+     * leases its own connection from {@code pool}, so identical waits share one poll whoever started it.
+     */
+    public static CompletableFuture<Boolean> waitForRecordAsync(DbConnectionPool pool, String sql, String param,
+                                                                WaitExpectation expectation, PollStrategy pollStrategy)
+            throws SQLException {
+        String query = WorkerNamespace.rewrite(sql);
+        return waitForRecordAsync(waitKey(pool, query, param, expectation), query, param, expectation, pollStrategy, () -> {
+            try (DbConnectionPool.Lease lease = pool.lease()) {
+                Connection conn = lease.connection();
+                return recordExists(conn, existsQuery(conn, query, expectation), param, expectation);
+            }
+        });
+    }
+
+    private static CompletableFuture<Boolean> waitForRecordAsync(SingleFlightWait.WaitKey key, String query, String param,
+                                                                 WaitExpectation expectation, PollStrategy pollStrategy,
+                                                                 Callable<Boolean> exists) {
+        if (knownTerminal(query, param, expectation)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        CompletableFuture<Boolean> wait = SingleFlightWait.join(key, timeoutFor(key.dataSource(), query),
+                remaining -> pollRecord(key.dataSource(), query, param, remaining, pollStrategy, exists));
+        wait.thenAccept(found -> {
+            if (found) {
+                rememberTerminal(query, param, expectation);
+            }
+        });
+        return wait;
+    }
+
+    /**
+     * Waits for many rows at once. Every poll checks all still-pending keys with a single
+     * IN (...) query, and keys drop out of the query as soon as they reach their expected value.
+     *
+     * @param conn            JDBC Connection
+     * @param table           Table to query (e.g., "CLIENT_DETAILS")
+     * @param keyColumn       Key column (e.g., "CLNT_ID")
+     * @param columnLabel     Column name to check (e.g., "CLNT_STAT")
+     * @param expectedValues  Expected value per key (e.g., clientId -> "ONBOARDED")
+     * @return true for every key that reached its expected value, false for keys still pending at timeout
+     * @throws IllegalArgumentException if the table or a column is not a plain name
+     */
+    public static Map<String, Boolean> waitForRecords(Connection conn, String table, String keyColumn,
+                                                      String columnLabel, Map<String, String> expectedValues) {
+        return waitForRecords(conn, table, keyColumn, columnLabel, expectedValues, LearnedPollStrategy.forQuery(
+                DbLoadGovernor.dataSourceOf(conn), batchShape(WorkerNamespace.table(table), keyColumn, columnLabel),
+                DEFAULT_POLL_STRATEGY));
+    }
+
+    /**
+     * Same as {@link #waitForRecords(Connection, String, String, String, Map)} with a custom poll schedule.
+     */
+    public static Map<String, Boolean> waitForRecords(Connection conn, String table, String keyColumn, String columnLabel,
+                                                      Map<String, String> expectedValues, PollStrategy pollStrategy) {
+        // The names go into the SQL as they are
+        WaitExpectation.requireIdentifier(keyColumn);
+        WaitExpectation.requireIdentifier(columnLabel);
+        String workerTable = WorkerNamespace.table(WaitExpectation.requireTableName(table));
+        Set<String> pending = ConcurrentHashMap.newKeySet();
+        pending.addAll(expectedValues.keySet());
+        String shape = batchShape(workerTable, keyColumn, columnLabel);
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(workerTable, shape).on(dataSource);
+        Duration timeout = timeoutFor(dataSource, shape);
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+
+        try {
+            Awaitility.await()
+                .atMost(timeout)
+                .pollDelay(Duration.ZERO)
+                .pollInterval((pollCount, previous) -> pollStrategy.nextDelay(pollCount))
+                .until(metrics.timed(WaitEvents.traced(shape, null, () -> {
+                    removeMatchedKeys(conn, workerTable, keyColumn, columnLabel, shape, expectedValues, pending,
+                            deadlineMillis);
+                    return pending.isEmpty();
+                })));
+        } catch (ConditionTimeoutException e) {
+            // Keys still pending are reported as false below
+        }
+        metrics.finish(pending.isEmpty());
+
+        Map<String, Boolean> results = new LinkedHashMap<>();
+        for (String key : expectedValues.keySet()) {
+            results.put(key, !pending.contains(key));
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    private static boolean recordExists(Connection conn, String existsSql, String param, WaitExpectation expectation) {
+        try (PreparedStatement ps = conn.prepareStatement(existsSql)) {
+            ps.setString(1, param);
+            WaitExpectation.bindAll(ps, 2, Collections.singletonList(expectation));
+            try (ResultSet rs = WaitEvents.executeQuery(ps, existsSql, param)) {
+                WaitEvents.Fetch fetch = WaitEvents.beginFetch();
+                boolean found = rs.next();
+                fetch.finish(existsSql, param, found ? 1 : 0, found ? WaitEvents.MATCHED : WaitEvents.PENDING);
+                return found;
             }
         } catch (SQLException e) {
             // Optional: log exception
@@ -41,4 +358,273 @@ public class DbWaitUtil {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    private static boolean awaitRecord(Connection conn, String sql, String existsSql, String param,
+                                       WaitExpectation expectation, Duration timeout, PollStrategy pollStrategy) {
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        boolean found = pollOnCallerThread(DbLoadGovernor.governed(dataSource, deadlineMillis, recordCheck(sql, param,
+                metrics, () -> recordExists(conn, existsSql, param, expectation))), deadlineMillis, pollStrategy,
+                ChangeNotificationHub.topic(WaitMetrics.tableOf(sql), param));
+        metrics.finish(found);
+        return found;
+    }
+
+    private static CompletableFuture<Boolean> pollRecord(String dataSource, String sql, String param, Duration timeout,
+                                                         PollStrategy pollStrategy, Callable<Boolean> exists) {
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        CompletableFuture<Boolean> poll = AsyncDbWait.waitUntilGoverned(dataSource,
+                recordCheck(sql, param, metrics, exists), timeout, pollStrategy,
+                ChangeNotificationHub.topic(WaitMetrics.tableOf(sql), param));
+        poll.thenAccept(metrics::finish);
+        return poll;
+    }
+
+    private static Callable<Boolean> recordCheck(String sql, String param, WaitMetrics.Wait metrics,
+                                                 Callable<Boolean> exists) {
+        return metrics.timed(WaitEvents.traced(sql, param, exists));
+    }
+
+    private static boolean awaitState(Connection conn, String sql, String param, StateExpectation expectation,
+                                      Duration timeout, PollStrategy pollStrategy) {
+        String stateSql = stateQuery(conn, sql, expectation.column());
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        boolean reached;
+        try {
+            reached = pollOnCallerThread(DbLoadGovernor.governed(dataSource, deadlineMillis, stateCheck(sql, param,
+                    expectation, metrics, () -> currentState(conn, stateSql, param))), deadlineMillis, pollStrategy,
+                    ChangeNotificationHub.topic(WaitMetrics.tableOf(sql), param));
+        } catch (RuntimeException e) {
+            metrics.failed();
+            throw e;
+        }
+        metrics.finish(reached);
+        return reached;
+    }
+
+    private static CompletableFuture<Boolean> pollState(String dataSource, String sql, String param,
+                                                        StateExpectation expectation, Duration timeout,
+                                                        PollStrategy pollStrategy, Callable<String> state) {
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        CompletableFuture<Boolean> poll = AsyncDbWait.waitUntilGoverned(dataSource,
+                stateCheck(sql, param, expectation, metrics, state),
+                timeout, pollStrategy, ChangeNotificationHub.topic(WaitMetrics.tableOf(sql), param));
+        poll.whenComplete((reached, error) -> {
+            if (error == null) {
+                metrics.finish(reached);
+            } else {
+                metrics.failed();
+            }
+        });
+        return poll;
+    }
+
+    private static Callable<Boolean> stateCheck(String sql, String param, StateExpectation expectation,
+                                                WaitMetrics.Wait metrics, Callable<String> state) {
+        String table = WaitMetrics.tableOf(sql);
+        String keyColumn = TerminalStateCache.keyColumnOf(sql);
+        return metrics.timed(WaitEvents.traced(sql, param, () -> {
+            String current = state.call();
+            // Success and failure values alike are cached if registered as terminal
+            TerminalStateCache.remember(table, keyColumn, param, expectation.column(), current);
+            return expectation.reached(table, param, current);
+        }));
+    }
+
+    /**
+     * Polls {@code check} on the calling thread until it holds or the deadline passes. Like {@link AsyncDbWait},
+     * a change published for {@code notificationTopic} cuts the current sleep short.
+     */
+    private static boolean pollOnCallerThread(Callable<Boolean> check, long deadlineMillis, PollStrategy pollStrategy,
+                                              String notificationTopic) {
+        Semaphore changed = new Semaphore(0);
+        ChangeNotificationHub.Subscription subscription = ChangeNotificationHub.isActive()
+                ? ChangeNotificationHub.subscribe(notificationTopic, changed::release)
+                : () -> { };
+        try {
+            int attempt = 0;
+            while (true) {
+                // A change published while the check runs leaves a permit, so the next poll follows at once
+                changed.drainPermits();
+                try {
+                    if (Boolean.TRUE.equals(check.call())) {
+                        return true;
+                    }
+                } catch (TimeoutException e) {
+                    return false; // Still queued for a query permit at the deadline
+                }
+                long remaining = deadlineMillis - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                changed.tryAcquire(Math.min(pollStrategy.nextDelay(++attempt).toMillis(), remaining),
+                        TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Database wait interrupted", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            subscription.close();
+        }
+    }
+
+    private static String currentState(Connection conn, String stateSql, String param) {
+        try (PreparedStatement ps = conn.prepareStatement(stateSql)) {
+            ps.setString(1, param);
+            try (ResultSet rs = WaitEvents.executeQuery(ps, stateSql, param)) {
+                WaitEvents.Fetch fetch = WaitEvents.beginFetch();
+                boolean found = rs.next();
+                String state = found ? rs.getString(1) : null;
+                // The outcome is the state read, so a slow wait shows what it kept seeing
+                fetch.finish(stateSql, param, found ? 1 : 0, state == null ? WaitEvents.PENDING : state);
+                return state;
+            }
+        } catch (SQLException e) {
+            // Optional: log exception
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static String stateQuery(Connection conn, String sql, String column) {
+        WaitExpectation.RowLimit rowLimit;
+        try {
+            rowLimit = WaitExpectation.RowLimit.forConnection(conn);
+        } catch (SQLException e) {
+            rowLimit = WaitExpectation.RowLimit.FETCH_FIRST;
+        }
+        return rowLimit.apply("SELECT q." + column + " FROM (" + sql + ") q");
+    }
+
+    private static Duration timeoutFor(String dataSource, String sql) {
+        return LearnedPollStrategy.timeoutFor(dataSource, sql, Duration.ofSeconds(TIMEOUT_SECONDS));
+    }
+
+    private static String batchShape(String table, String keyColumn, String columnLabel) {
+        return "SELECT " + keyColumn + ", " + columnLabel + " FROM " + table + " WHERE " + keyColumn + " IN (...)";
+    }
+
+    private static String cachedState(String sql, String param, StateExpectation expectation) {
+        return TerminalStateCache.lookup(WaitMetrics.tableOf(sql), TerminalStateCache.keyColumnOf(sql), param,
+                expectation.column());
+    }
+
+    private static boolean knownTerminal(String sql, String param, WaitExpectation expectation) {
+        String cached = TerminalStateCache.lookup(WaitMetrics.tableOf(sql), TerminalStateCache.keyColumnOf(sql), param,
+                expectation.column());
+        return cached != null && expectation.matches(cached);
+    }
+
+    private static void rememberTerminal(String sql, String param, WaitExpectation expectation) {
+        String table = WaitMetrics.tableOf(sql);
+        String keyColumn = TerminalStateCache.keyColumnOf(sql);
+        // Only equality tells us the actual value of the column
+        if (expectation.operator() == WaitExpectation.Operator.EQUALS) {
+            TerminalStateCache.remember(table, keyColumn, param, expectation.column(), expectation.value());
+        } else if (expectation.operator() == WaitExpectation.Operator.EQUALS_IGNORE_CASE) {
+            String terminal = TerminalStateCache.terminalValueIgnoringCase(table, expectation.column(), expectation.value());
+            if (terminal != null) {
+                TerminalStateCache.remember(table, keyColumn, param, expectation.column(), terminal);
+            }
+        }
+    }
+
+    private static String existsQuery(Connection conn, String sql, WaitExpectation expectation) {
+        WaitExpectation.RowLimit rowLimit;
+        try {
+            rowLimit = WaitExpectation.RowLimit.forConnection(conn);
+        } catch (SQLException e) {
+            rowLimit = WaitExpectation.RowLimit.FETCH_FIRST;
+        }
+        return WaitExpectation.existsQuery(sql, rowLimit, expectation);
+    }
+
+    /**
+     * @param connection  the caller's connection when a non-blocking poll runs on it, otherwise null
+     */
+    private static SingleFlightWait.WaitKey waitKey(Connection conn, Connection connection, String sql, String param,
+                                                    WaitExpectation expectation) {
+        return new SingleFlightWait.WaitKey(DbLoadGovernor.dataSourceOf(conn), connection, sql,
+                Collections.singletonList(param), expectation.canonical());
+    }
+
+    private static SingleFlightWait.WaitKey waitKey(DbConnectionPool pool, String sql, String param,
+                                                    WaitExpectation expectation) throws SQLException {
+        return new SingleFlightWait.WaitKey(pool.dataSource(), sql, Collections.singletonList(param),
+                expectation.canonical());
+    }
+
+    private static SingleFlightWait.WaitKey stateWaitKey(Connection conn, Connection connection, String sql, String param,
+                                                         StateExpectation expectation) {
+        return new SingleFlightWait.WaitKey(DbLoadGovernor.dataSourceOf(conn), connection, sql,
+                Collections.singletonList(param), expectation.canonical());
+    }
+
+    private static SingleFlightWait.WaitKey stateWaitKey(DbConnectionPool pool, String sql, String param,
+                                                         StateExpectation expectation) throws SQLException {
+        return new SingleFlightWait.WaitKey(pool.dataSource(), sql, Collections.singletonList(param),
+                expectation.canonical());
+    }
+
+    /**
+     * @param shape  the query without its IN list, for {@link WaitEvents}
+     */
+    private static void removeMatchedKeys(Connection conn, String table, String keyColumn, String columnLabel,
+                                          String shape, Map<String, String> expectedValues, Set<String> pending,
+                                          long deadlineMillis) throws InterruptedException {
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        List<String> keys = new ArrayList<>(pending);
+        for (int from = 0; from < keys.size(); from += MAX_IN_LIST_SIZE) {
+            List<String> chunk = keys.subList(from, Math.min(from + MAX_IN_LIST_SIZE, keys.size()));
+            String sql = "SELECT " + keyColumn + ", " + columnLabel + " FROM " + table
+                    + " WHERE " + keyColumn + " IN (" + placeholders(chunk.size()) + ")";
+
+            DbLoadGovernor.Permit permit;
+            try {
+                permit = DbLoadGovernor.acquire(dataSource, deadlineMillis);
+            } catch (TimeoutException e) {
+                return; // Out of time; the keys not checked stay pending
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = WaitEvents.executeQuery(ps, shape, WaitEvents.NO_KEY)) {
+                    WaitEvents.Fetch fetch = WaitEvents.beginFetch();
+                    int rows = 0;
+                    int matched = 0;
+                    while (rs.next()) {
+                        rows++;
+                        String key = rs.getString(1);
+                        String expectedValue = expectedValues.get(key);
+                        if (expectedValue != null && expectedValue.equalsIgnoreCase(rs.getString(2))) {
+                            pending.remove(key);
+                            matched++;
+                        }
+                    }
+                    fetch.finish(shape, WaitEvents.NO_KEY, rows, matched == chunk.size() ? WaitEvents.MATCHED : WaitEvents.PENDING);
+                }
+            } catch (SQLException e) {
+                // Optional: log exception
+                e.printStackTrace();
+            } finally {
+                permit.close();
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated asynchronous replication between two local databases (e.g. two in-memory H2 instances), for trying
+ * {@link ReplicaRouter} without a real replica. Every tick the listed tables are copied from the primary, and each
+ * copy is applied to the replica {@code delay} later, in order, replacing the replica's rows.
+ * <pre>
+ * try (DelayedReplication replication = new DelayedReplication(primaryPool, replicaPool, Duration.ofMillis(300),
+ *         "users", ReplicaRouter.DEFAULT_HEARTBEAT_TABLE)) {
+ *     replication.setDelay(Duration.ofSeconds(5)); // lag spike
+ * }
+ * </pre>
+ * Whole tables are copied, so keep them small. The tables must already exist on both sides.
+ */
+public class DelayedReplication implements AutoCloseable {
+
+    private static final long TICK_MILLIS = 50;
+
+    private final DbConnectionPool primary;
+    private final DbConnectionPool replica;
+    private final List<String> tables;
+    private final Deque<Snapshot> pending = new ArrayDeque<>(); // guarded by itself
+    private final ScheduledFuture<?> task;
+    private volatile long delayMillis;
+
+    public DelayedReplication(DbConnectionPool primary, DbConnectionPool replica, Duration delay, String... tables) {
+        this.primary = primary;
+        this.replica = replica;
+        this.tables = new ArrayList<>();
+        for (String table : tables) {
+            this.tables.add(WaitExpectation.requireTableName(table));
+        }
+        this.delayMillis = delay.toMillis();
+        // Each tick copies whole tables, so it runs on a check thread rather than the scheduler that times every wait
+        this.task = AsyncDbWait.scheduleBlocking(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Changes the delay for copies taken from now on; copies already taken keep theirs.
+     */
+    public void setDelay(Duration delay) {
+        this.delayMillis = delay.toMillis();
+    }
+
+    private void tick() {
+        try {
+            Snapshot snapshot = takeSnapshot();
+            synchronized (pending) {
+                pending.addLast(snapshot);
+            }
+            applyDue();
+        } catch (SQLException e) {
+            // Like a real replica, a failed round just leaves it further behind
+            System.err.println("Simulated replication failed: " + e.getMessage());
+        }
+    }
+
+    private Snapshot takeSnapshot() throws SQLException {
+        Map<String, List<Object[]>> rows = new LinkedHashMap<>();
+        Map<String, List<String>> columns = new LinkedHashMap<>();
+        try (DbConnectionPool.Lease lease = primary.lease();
+             Statement stmt = lease.connection().createStatement()) {
+            for (String table : tables) {
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table)) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    List<String> names = new ArrayList<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        names.add(meta.getColumnLabel(i));
+                    }
+                    List<Object[]> tableRows = new ArrayList<>();
+                    while (rs.next()) {
+                        Object[] row = new Object[names.size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = rs.getObject(i + 1);
+                        }
+                        tableRows.add(row);
+                    }
+                    columns.put(table, names);
+                    rows.put(table, tableRows);
+                }
+            }
+        }
+        return new Snapshot(System.currentTimeMillis() + delayMillis, columns, rows);
+    }
+
+    private void applyDue() throws SQLException {
+        Snapshot due = null;
+        synchronized (pending) {
+            // Oldest first, and never past one that is not due yet, so the replica only moves forward
+            while (!pending.isEmpty() && pending.peekFirst().applyAtMillis <= System.currentTimeMillis()) {
+                due = pending.pollFirst();
+            }
+        }
+        if (due != null) {
+            apply(due); // The newest due copy supersedes the older ones
+        }
+    }
+
+    private void apply(Snapshot snapshot) throws SQLException {
+        try (DbConnectionPool.Lease lease = replica.lease()) {
+            Connection conn = lease.connection();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String table : tables) {
+                    stmt.executeUpdate("DELETE FROM " + table);
+                    List<String> names = snapshot.columns.get(table);
+                    try (PreparedStatement insert = conn.prepareStatement("INSERT INTO " + table + " ("
+                            + String.join(", ", names) + ") VALUES (" + placeholders(names.size()) + ")")) {
+                        for (Object[] row : snapshot.rows.get(table)) {
+                            for (int i = 0; i < row.length; i++) {
+                                insert.setObject(i + 1, row[i]);
+                            }
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        String[] marks = new String[count];
+        Arrays.fill(marks, "?");
+        return String.join(", ", marks);
+    }
+
+    @Override
+    public void close() {
+        task.cancel(false);
+    }
+
+    private static final class Snapshot {
+
+        private final long applyAtMillis;
+        private final Map<String, List<String>> columns;
+        private final Map<String, List<Object[]>> rows;
+
+        private Snapshot(long applyAtMillis, Map<String, List<String>> columns, Map<String, List<Object[]>> rows) {
+            this.applyAtMillis = applyAtMillis;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Batched execution plan for a set of {@link ExpectationSpec}s. Specs are grouped by table and key column, and
+ * every poll tick runs one {@code SELECT key, columns... FROM table WHERE key IN (...)} per group for the specs
+ * still pending, so a scenario with 40 checks on three tables costs three queries per tick instead of 40 loops.
+ * <pre>
+ * ExpectationPlan plan = ExpectationPlan.compile(ExpectationSpec.load(Paths.get("expectations.json")));
+ * Map&lt;ExpectationSpec, Boolean&gt; results = plan.await(conn, Duration.ofSeconds(30), pollStrategy);
+ * </pre>
+ */
+public final class ExpectationPlan {
+
+    private static final int MAX_IN_LIST_SIZE = 1000; // Oracle rejects IN lists longer than 1000
+
+    private final List<ExpectationSpec> specs;
+    private final List<TableGroup> groups;
+
+    private ExpectationPlan(List<ExpectationSpec> specs, List<TableGroup> groups) {
+        this.specs = specs;
+        this.groups = groups;
+    }
+
+    public static ExpectationPlan compile(List<ExpectationSpec> specs) {
+        Map<String, TableGroup> groups = new LinkedHashMap<>();
+        for (ExpectationSpec spec : specs) {
+            String groupKey = spec.table().toUpperCase(Locale.ROOT) + " " + spec.keyColumn().toUpperCase(Locale.ROOT);
+            groups.computeIfAbsent(groupKey, k -> new TableGroup(spec.table(), spec.keyColumn())).add(spec);
+        }
+        return new ExpectationPlan(Collections.unmodifiableList(new ArrayList<>(specs)),
+                Collections.unmodifiableList(new ArrayList<>(groups.values())));
+    }
+
+    /**
+     * Number of queries each poll tick issues while every spec is still pending.
+     */
+    public int queriesPerTick() {
+        int queries = 0;
+        for (TableGroup group : groups) {
+            queries += (group.keys().size() + MAX_IN_LIST_SIZE - 1) / MAX_IN_LIST_SIZE;
+        }
+        return queries;
+    }
+
+    /**
+     * Polls until every spec holds or {@code timeout} elapses. Specs drop out of the queries once they hold.
+     *
+     * @return true for every spec that held, false for specs still pending at timeout, in spec order
+     */
+    public Map<ExpectationSpec, Boolean> await(Connection conn, Duration timeout, PollStrategy pollStrategy)
+            throws InterruptedException {
+        Set<ExpectationSpec> pending = new LinkedHashSet<>(specs);
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        int attempt = 0;
+
+        // This worker's copies of isolated tables, resolved on the calling thread
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        List<String> tables = new ArrayList<>();
+        List<WaitMetrics.Wait> metrics = new ArrayList<>();
+        for (TableGroup group : groups) {
+            String table = WorkerNamespace.table(group.table);
+            tables.add(table);
+            metrics.add(WaitMetrics.begin(table, group.sql(table, "...")).on(dataSource));
+        }
+        boolean[] finished = new boolean[groups.size()];
+
+        while (true) {
+            for (int i = 0; i < groups.size(); i++) {
+                TableGroup group = groups.get(i);
+                if (finished[i]) {
+                    continue;
+                }
+                long queryStart = metrics.get(i).startQuery();
+                group.removeMatched(conn, tables.get(i), dataSource, pending, deadline);
+                metrics.get(i).endQuery(queryStart);
+                if (!group.hasPending(pending)) {
+                    metrics.get(i).finish(true);
+                    finished[i] = true;
+                }
+            }
+            if (pending.isEmpty() || System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            pollStrategy.sleepBeforeNextPoll(++attempt, deadline);
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            if (!finished[i]) {
+                metrics.get(i).finish(false);
+            }
+        }
+
+        Map<ExpectationSpec, Boolean> results = new LinkedHashMap<>();
+        for (ExpectationSpec spec : specs) {
+            results.put(spec, !pending.contains(spec));
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Specs on one table and key column, checked with one query per tick.
+     */
+    private static final class TableGroup {
+
+        private final String table;
+        private final String keyColumn;
+        private final Set<String> columns = new LinkedHashSet<>();
+        private final Map<String, List<ExpectationSpec>> specsByKey = new LinkedHashMap<>();
+
+        private TableGroup(String table, String keyColumn) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+        }
+
+        private void add(ExpectationSpec spec) {
+            for (WaitExpectation expectation : spec.expectations()) {
+                columns.add(expectation.column().toUpperCase(Locale.ROOT));
+            }
+            specsByKey.computeIfAbsent(spec.key(), k -> new ArrayList<>()).add(spec);
+        }
+
+        private Set<String> keys() {
+            return specsByKey.keySet();
+        }
+
+        private String sql(String table, String inList) {
+            StringBuilder sql = new StringBuilder("SELECT ").append(keyColumn);
+            for (String column : columns) {
+                sql.append(", ").append(column);
+            }
+            return sql.append(" FROM ").append(table).append(" WHERE ").append(keyColumn)
+                    .append(" IN (").append(inList).append(")").toString();
+        }
+
+        private boolean hasPending(Set<ExpectationSpec> pending) {
+            for (List<ExpectationSpec> keySpecs : specsByKey.values()) {
+                for (ExpectationSpec spec : keySpecs) {
+                    if (pending.contains(spec)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void removeMatched(Connection conn, String table, String dataSource, Set<ExpectationSpec> pending,
+                                   long deadlineMillis) throws InterruptedException {
+            List<String> keys = new ArrayList<>();
+            for (Map.Entry<String, List<ExpectationSpec>> entry : specsByKey.entrySet()) {
+                for (ExpectationSpec spec : entry.getValue()) {
+                    if (pending.contains(spec)) {
+                        keys.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+
+            for (int from = 0; from < keys.size(); from += MAX_IN_LIST_SIZE) {
+                List<String> chunk = keys.subList(from, Math.min(from + MAX_IN_LIST_SIZE, keys.size()));
+                DbLoadGovernor.Permit permit;
+                try {
+                    permit = DbLoadGovernor.acquire(dataSource, deadlineMillis);
+                } catch (TimeoutException e) {
+                    return; // Out of time; the specs not checked stay pending
+                }
+                try (PreparedStatement ps = conn.prepareStatement(sql(table, placeholders(chunk.size())))) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            List<ExpectationSpec> keySpecs = specsByKey.get(rs.getString(1));
+                            if (keySpecs == null) {
+                                continue;
+                            }
+                            for (ExpectationSpec spec : keySpecs) {
+                                if (pending.contains(spec) && holds(spec, rs)) {
+                                    pending.remove(spec);
+                                }
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    // Optional: log exception
+                    e.printStackTrace();
+                } finally {
+                    permit.close();
+                }
+            }
+        }
+
+        private static boolean holds(ExpectationSpec spec, ResultSet rs) throws SQLException {
+            for (WaitExpectation expectation : spec.expectations()) {
+                if (!expectation.matches(rs.getString(expectation.column()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String placeholders(int count) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            return sb.toString();
+        }
+    }
+}
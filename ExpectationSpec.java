@@ -0,0 +1,173 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One declarative check: the row of {@code table} whose {@code keyColumn} equals {@code key} must satisfy every
+ * expectation. Specs are written in JSON, one object per check:
+ * <pre>
+ * {
+ *   "name": "client onboarded",
+ *   "table": "CLIENT_DETAILS",
+ *   "keyColumn": "CLMT_ID",
+ *   "workerKey": "123",
+ *   "expect": {
+ *     "CLMT_STAT": {"contains": "ONBOARDED"},
+ *     "CLMT_TYPE": "INDIVIDUAL"
+ *   }
+ * }
+ * </pre>
+ * A plain value means equals; an object names one operator: {@code equals}, {@code equalsIgnoreCase},
+ * {@code notEquals}, {@code contains} or {@code startsWith}. Run specs with {@link ExpectationPlan}.
+ * <p>
+ * {@code "workerKey"} names the entity the test created through {@link WorkerNamespace#key}: "123" becomes this
+ * worker's "123-k3f9w2", so load the specs on the test thread. Use {@code "key"} for a key taken as written.
+ */
+public final class ExpectationSpec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String name;
+    private final String table;
+    private final String keyColumn;
+    private final String key;
+    private final List<WaitExpectation> expectations;
+
+    public ExpectationSpec(String name, String table, String keyColumn, String key, List<WaitExpectation> expectations) {
+        if (expectations.isEmpty()) {
+            throw new IllegalArgumentException("Spec '" + name + "' has no expectations");
+        }
+        this.name = name;
+        this.table = WaitExpectation.requireTableName(table);
+        this.keyColumn = WaitExpectation.requireIdentifier(keyColumn);
+        this.key = key;
+        this.expectations = Collections.unmodifiableList(new ArrayList<>(expectations));
+    }
+
+    /**
+     * Reads a JSON file holding one spec object or an array of them.
+     */
+    public static List<ExpectationSpec> load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return fromJson(MAPPER.readTree(in));
+        }
+    }
+
+    public static List<ExpectationSpec> parse(String json) throws IOException {
+        return fromJson(MAPPER.readTree(json));
+    }
+
+    private static List<ExpectationSpec> fromJson(JsonNode root) {
+        List<ExpectationSpec> specs = new ArrayList<>();
+        if (root.isArray()) {
+            for (JsonNode node : root) {
+                specs.add(fromNode(node, specs.size()));
+            }
+        } else {
+            specs.add(fromNode(root, 0));
+        }
+        return specs;
+    }
+
+    private static ExpectationSpec fromNode(JsonNode node, int position) {
+        String table = requiredText(node, "table", position);
+        String keyColumn = requiredText(node, "keyColumn", position);
+        String key = key(node, position);
+        String name = node.hasNonNull("name") ? node.get("name").asText() : table + " " + keyColumn + "=" + key;
+
+        JsonNode expect = node.get("expect");
+        if (expect == null || !expect.isObject()) {
+            throw new IllegalArgumentException("Spec '" + name + "' needs an \"expect\" object");
+        }
+        List<WaitExpectation> expectations = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = expect.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            expectations.add(expectation(name, field.getKey(), field.getValue()));
+        }
+        return new ExpectationSpec(name, table, keyColumn, key, expectations);
+    }
+
+    private static WaitExpectation expectation(String name, String column, JsonNode value) {
+        if (!value.isObject()) {
+            return WaitExpectation.equalTo(column, value.asText());
+        }
+        if (value.size() != 1) {
+            throw new IllegalArgumentException("Spec '" + name + "', column " + column + ": expected exactly one operator");
+        }
+        Map.Entry<String, JsonNode> operator = value.fields().next();
+        return WaitExpectation.of(column, operator(name, operator.getKey()), operator.getValue().asText());
+    }
+
+    private static WaitExpectation.Operator operator(String name, String operator) {
+        switch (operator.toLowerCase(Locale.ROOT)) {
+            case "equals":
+                return WaitExpectation.Operator.EQUALS;
+            case "equalsignorecase":
+                return WaitExpectation.Operator.EQUALS_IGNORE_CASE;
+            case "notequals":
+                return WaitExpectation.Operator.NOT_EQUALS;
+            case "contains":
+                return WaitExpectation.Operator.CONTAINS;
+            case "startswith":
+                return WaitExpectation.Operator.STARTS_WITH;
+            default:
+                throw new IllegalArgumentException("Spec '" + name + "': unknown operator " + operator);
+        }
+    }
+
+    private static String key(JsonNode node, int position) {
+        if (!node.hasNonNull("workerKey")) {
+            return requiredText(node, "key", position);
+        }
+        if (node.hasNonNull("key")) {
+            throw new IllegalArgumentException("Spec #" + position + " has both \"key\" and \"workerKey\"");
+        }
+        return WorkerNamespace.key(requiredText(node, "workerKey", position));
+    }
+
+    private static String requiredText(JsonNode node, String field, int position) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull() || value.isContainerNode()) {
+            throw new IllegalArgumentException("Spec #" + position + " is missing \"" + field + "\"");
+        }
+        return value.asText();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public String keyColumn() {
+        return keyColumn;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public List<WaitExpectation> expectations() {
+        return expectations;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + expectations;
+    }
+}
@@ -0,0 +1,237 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rows of a JSON or CSV dataset file, read one at a time, for {@link FixtureLoader} and {@link DatasetComparison}.
+ * JSON is one array of objects or a stream of objects; columns come from the first object and keys missing from
+ * later objects read as null. CSV starts with a header row.
+ */
+abstract class FixtureRows implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Opens a {@code .csv} file, or JSON for any other extension.
+     */
+    static FixtureRows open(Path file) throws IOException {
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            return csv(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+        return json(Files.newInputStream(file));
+    }
+
+    static FixtureRows json(InputStream in) throws IOException {
+        return new JsonRows(new JsonFactory(MAPPER).createParser(in));
+    }
+
+    static FixtureRows csv(Reader in) {
+        return new CsvRows(in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in));
+    }
+
+    /**
+     * Column names in file order; call once, before {@link #next()}.
+     */
+    abstract List<String> columns() throws IOException;
+
+    /**
+     * Next row in column order, or null at the end.
+     */
+    abstract Object[] next() throws IOException;
+
+    private static final class JsonRows extends FixtureRows {
+
+        private final JsonParser parser;
+        private List<String> columns;
+        private JsonNode first;
+        private boolean inArray;
+
+        private JsonRows(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        List<String> columns() throws IOException {
+            JsonToken token = parser.nextToken();
+            inArray = token == JsonToken.START_ARRAY;
+            first = readObject(inArray ? parser.nextToken() : token);
+            columns = new ArrayList<>();
+            if (first != null) {
+                Iterator<String> names = first.fieldNames();
+                while (names.hasNext()) {
+                    columns.add(names.next());
+                }
+            }
+            return columns;
+        }
+
+        @Override
+        Object[] next() throws IOException {
+            JsonNode node;
+            if (first != null) {
+                node = first;
+                first = null;
+            } else {
+                node = readObject(parser.nextToken());
+            }
+            if (node == null) {
+                return null;
+            }
+            Object[] row = new Object[columns.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = valueOf(node.get(columns.get(i)));
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+        private JsonNode readObject(JsonToken token) throws IOException {
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object at " + parser.getCurrentLocation() + " but found " + token);
+            }
+            // Only this one object is materialised
+            return parser.readValueAsTree();
+        }
+
+        private static Object valueOf(JsonNode value) {
+            if (value == null || value.isNull()) {
+                return null;
+            }
+            if (value.isIntegralNumber()) {
+                return value.canConvertToLong() ? (Object) value.longValue() : value.bigIntegerValue();
+            }
+            if (value.isNumber()) {
+                return value.decimalValue();
+            }
+            if (value.isBoolean()) {
+                return value.booleanValue();
+            }
+            return value.isContainerNode() ? value.toString() : value.asText();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV: quoted fields may hold commas, doubled quotes and line breaks. Empty unquoted fields are NULL.
+     */
+    private static final class CsvRows extends FixtureRows {
+
+        private final BufferedReader in;
+        private int width;
+
+        private CsvRows(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        List<String> columns() throws IOException {
+            List<String> header = readRecord();
+            if (header == null) {
+                return Collections.emptyList();
+            }
+            List<String> columns = new ArrayList<>();
+            for (String name : header) {
+                columns.add(name.trim());
+            }
+            width = columns.size();
+            return columns;
+        }
+
+        @Override
+        Object[] next() throws IOException {
+            List<String> record = readRecord();
+            while (record != null && record.size() == 1 && record.get(0) == null) {
+                record = readRecord(); // Blank line
+            }
+            if (record == null) {
+                return null;
+            }
+            if (record.size() != width) {
+                throw new IOException("CSV record has " + record.size() + " fields, header has " + width + ": " + record);
+            }
+            return record.toArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private List<String> readRecord() throws IOException {
+            String line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    String more = in.readLine();
+                    if (more == null) {
+                        throw new IOException("Unterminated quoted CSV field: " + field);
+                    }
+                    field.append('\n');
+                    line = more;
+                    i = 0;
+                    continue;
+                }
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    fields.add(fieldValue(field, wasQuoted));
+                    field.setLength(0);
+                    wasQuoted = false;
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(fieldValue(field, wasQuoted));
+            return fields;
+        }
+
+        private static String fieldValue(StringBuilder field, boolean wasQuoted) {
+            return field.length() == 0 && !wasQuoted ? null : field.toString();
+        }
+    }
+}
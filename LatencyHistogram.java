@@ -0,0 +1,119 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe log-linear histogram in the style of HdrHistogram: values below 32 are kept exactly, larger
+ * values land in one of 32 sub-buckets per power of two (about 3% relative error). Recording is lock-free
+ * and allocation-free, so it can sit on every poll.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value non-negative value, e.g. a latency in milliseconds or microseconds
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        totalCount.incrementAndGet();
+        sum.addAndGet(v);
+        long currentMax;
+        while (v > (currentMax = max.get()) && !max.compareAndSet(currentMax, v)) {
+            // Retry until the maximum sticks
+        }
+    }
+
+    public long count() {
+        return totalCount.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = totalCount.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return highest value equivalent to the bucket holding the percentile, capped at the recorded maximum
+     */
+    public long percentile(double percentile) {
+        long n = totalCount.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Writes the percentile distribution in HdrHistogram's text layout (the {@code .hgrm} format its plotter reads).
+     *
+     * @param outputScale divisor applied to every value, e.g. 1000.0 to print microseconds as milliseconds
+     */
+    public void writePercentileDistribution(Writer out, double outputScale) throws IOException {
+        long n = totalCount.get();
+        out.write(String.format(Locale.ROOT, "%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT && seen < n; i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount == 0) {
+                continue;
+            }
+            seen += bucketCount;
+            double fraction = Math.min(1.0, (double) seen / n);
+            long value = Math.min(highestEquivalentValue(i), max.get());
+            if (fraction < 1.0) {
+                out.write(String.format(Locale.ROOT, "%12.3f %2.12f %10d %14.2f%n",
+                        value / outputScale, fraction, seen, 1 / (1 - fraction)));
+            } else {
+                out.write(String.format(Locale.ROOT, "%12.3f %2.12f %10d%n", value / outputScale, fraction, seen));
+            }
+        }
+        out.write(String.format(Locale.ROOT, "#[Mean    = %12.3f, Max            = %12.3f]%n", mean() / outputScale,
+                max.get() / outputScale));
+        out.write(String.format(Locale.ROOT, "#[Total count    = %12d]%n", n));
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,116 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Poll schedule learned from {@link PollHistory}. After the immediate first poll, the next polls land at the
+ * 10th, 20th ... 90th, 95th, 99th and 99.9th percentiles of the delays seen for the same query, so they are
+ * dense where rows usually appear and sparse in the tail; after the last percentile the fallback schedule takes
+ * over. {@link #timeout(Duration)} is derived from the tail of the same history, and never exceeds the caller's own
+ * timeout; while a timed-out wait is in the history it is the caller's timeout, so an environment slower than the
+ * one the history came from gets the full timeout back after one failure. History is kept per data source, so name
+ * the one the wait polls.
+ * <p>
+ * Until a query has {@value #MIN_SAMPLES} recorded waits, both fall back to the configured constants.
+ * <pre>
+ * LearnedPollStrategy learned = LearnedPollStrategy.forQuery(DbLoadGovernor.dataSourceOf(conn), SELECT_CLMT_DTL_SQL,
+ *         CLIENT_DETAILS_POLL_STRATEGY);
+ * validator.await(conn, learned.timeout(Duration.ofSeconds(30)), learned, clientId);
+ * </pre>
+ */
+public final class LearnedPollStrategy implements PollStrategy {
+
+    static final int MIN_SAMPLES = 20;
+    private static final double[] PLANNED_PERCENTILES = {10, 20, 30, 40, 50, 60, 70, 80, 90, 95, 99, 99.9};
+    private static final long MIN_GAP_MILLIS = 10;
+    private static final double TIMEOUT_TAIL_FACTOR = 3.0;
+    private static final Duration MIN_TIMEOUT = Duration.ofSeconds(2);
+
+    private final PollStrategy fallback;
+    private final long[] delays;
+    private final long tailMillis;
+    private final boolean timedOut;
+
+    private LearnedPollStrategy(PollStrategy fallback, long[] delays, long tailMillis, boolean timedOut) {
+        this.fallback = fallback;
+        this.delays = delays;
+        this.tailMillis = tailMillis;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Same as {@link #forQuery(String, String, PollStrategy)} for waits that do not name their data source.
+     */
+    public static LearnedPollStrategy forQuery(String sql, PollStrategy fallback) {
+        return forQuery(null, sql, fallback);
+    }
+
+    /**
+     * Builds the schedule from the history recorded so far for {@code sql} on {@code dataSource}; later waits do
+     * not change it.
+     */
+    public static LearnedPollStrategy forQuery(String dataSource, String sql, PollStrategy fallback) {
+        List<Long> samples = PollHistory.sortedSamples(dataSource, sql);
+        if (samples.size() < MIN_SAMPLES) {
+            return new LearnedPollStrategy(fallback, new long[0], -1, false);
+        }
+
+        List<Long> delays = new ArrayList<>();
+        long lastPollAt = 0;
+        for (double percentile : PLANNED_PERCENTILES) {
+            long pollAt = percentile(samples, percentile);
+            if (pollAt - lastPollAt >= MIN_GAP_MILLIS) {
+                delays.add(pollAt - lastPollAt);
+                lastPollAt = pollAt;
+            }
+        }
+        long[] planned = new long[delays.size()];
+        for (int i = 0; i < planned.length; i++) {
+            planned[i] = delays.get(i);
+        }
+        return new LearnedPollStrategy(fallback, planned, percentile(samples, 99.9),
+                PollHistory.timeouts(dataSource, sql) > 0);
+    }
+
+    /**
+     * Shortcut for the learned timeout when the schedule itself is not needed.
+     */
+    public static Duration timeoutFor(String dataSource, String sql, Duration fallback) {
+        return forQuery(dataSource, sql, PollStrategy.fixed(Duration.ZERO)).timeout(fallback);
+    }
+
+    @Override
+    public Duration nextDelay(int attempt) {
+        if (attempt >= 1 && attempt <= delays.length) {
+            return Duration.ofMillis(delays[attempt - 1]);
+        }
+        return fallback.nextDelay(Math.max(1, attempt - delays.length));
+    }
+
+    /**
+     * Three times the 99.9th percentile delay, at least 2 seconds and at most {@code fallback};
+     * {@code fallback} while there is not enough history, or while the history holds a timed-out wait. Learning
+     * can only shorten a timeout.
+     */
+    public Duration timeout(Duration fallback) {
+        if (tailMillis < 0 || timedOut) {
+            return fallback;
+        }
+        long millis = Math.max(MIN_TIMEOUT.toMillis(), (long) (tailMillis * TIMEOUT_TAIL_FACTOR));
+        return Duration.ofMillis(Math.min(fallback.toMillis(), millis));
+    }
+
+    /**
+     * True once the schedule comes from history rather than the fallback.
+     */
+    public boolean isLearned() {
+        return tailMillis >= 0;
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.min(sorted.size() - 1, Math.max(0, index)));
+    }
+}
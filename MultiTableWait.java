@@ -0,0 +1,283 @@
+package org.example;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Waits on several tables for one entity at the same time, under one overall deadline. Wall time is that of the
+ * slowest table rather than the sum of all of them.
+ * <pre>
+ * MultiTableWait.Result result = MultiTableWait.forEntity(clientId)
+ *         .rows("CLIENT_DETAILS", detailsConn, clientDetailsValidator, clientId)
+ *         .rows("CLIENT_ENCRYPTION_DETAILS", encryptionConn, encryptionValidator, clientId)
+ *         .await(Duration.ofSeconds(30), pollStrategy);
+ * </pre>
+ * Checks run concurrently on the {@link AsyncDbWait} scheduler, so give each table its own connection
+ * (or use the {@link DbConnectionPool} overload, which leases a connection per poll). If any table reaches a
+ * terminal failure state ({@link TerminalStateException}), the other tables stop polling as well.
+ */
+public final class MultiTableWait {
+
+    private final String entity;
+    private final Map<String, TableCheck> checks = new LinkedHashMap<>();
+    private final Map<String, Callable<String>> dataSources = new HashMap<>();
+
+    private MultiTableWait(String entity) {
+        this.entity = entity;
+    }
+
+    /**
+     * @param entity key being validated (e.g. the clientId), used for change notifications and messages
+     */
+    public static MultiTableWait forEntity(String entity) {
+        return new MultiTableWait(entity);
+    }
+
+    /**
+     * Waits until {@code validator} finds a matching row on {@code conn}.
+     */
+    public MultiTableWait rows(String table, Connection conn, StreamingRowValidator validator, Object... params) {
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        return add(table, () -> dataSource, row -> {
+            StreamingRowValidator.Result result = validator.validate(conn, params);
+            row.set(result);
+            return result.matched();
+        });
+    }
+
+    /**
+     * Waits until {@code validator} finds a matching row, leasing a pooled connection for every poll.
+     */
+    public MultiTableWait rows(String table, DbConnectionPool pool, StreamingRowValidator validator, Object... params) {
+        return add(table, pool::dataSource, row -> {
+            try (DbConnectionPool.Lease lease = pool.lease()) {
+                StreamingRowValidator.Result result = validator.validate(lease.connection(), params);
+                row.set(result);
+                return result.matched();
+            }
+        });
+    }
+
+    /**
+     * Waits until an arbitrary condition on {@code table} holds. The condition's queries are not governed: wrapping
+     * them in {@link DbLoadGovernor#governed} would hold a check thread while they queue, so use a {@code rows}
+     * overload where the load matters.
+     */
+    public MultiTableWait condition(String table, Callable<Boolean> condition) {
+        return add(table, null, row -> condition.call());
+    }
+
+    /**
+     * @param dataSource  names the data source each poll is governed on, or null for an ungoverned check
+     */
+    private MultiTableWait add(String table, Callable<String> dataSource, TableCheck check) {
+        if (checks.put(table, check) != null) {
+            throw new IllegalArgumentException("Table already added: " + table);
+        }
+        if (dataSource != null) {
+            dataSources.put(table, dataSource);
+        }
+        return this;
+    }
+
+    /**
+     * Starts every table wait at once and completes when all of them are satisfied, failed or out of time.
+     */
+    public CompletableFuture<Result> awaitAsync(Duration timeout, PollStrategy pollStrategy) {
+        long startMillis = System.currentTimeMillis();
+        List<CompletableFuture<TableOutcome>> outcomes = new ArrayList<>();
+        List<CompletableFuture<Boolean>> polls = new CopyOnWriteArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        for (Map.Entry<String, TableCheck> entry : checks.entrySet()) {
+            String table = entry.getKey();
+            TableCheck check = entry.getValue();
+            AtomicReference<StreamingRowValidator.Result> row = new AtomicReference<>();
+            WaitMetrics.Wait metrics = WaitMetrics.begin(table, "multi-table wait on " + table);
+
+            Callable<Boolean> timed = metrics.timed(() -> check.call(row));
+            Callable<String> dataSource = dataSources.get(table);
+            String topic = ChangeNotificationHub.topic(table, entity);
+            CompletableFuture<Boolean> poll = dataSource == null
+                    ? AsyncDbWait.waitUntil(timed, timeout, pollStrategy, topic)
+                    : AsyncDbWait.waitUntilGoverned(dataSource, timed, timeout, pollStrategy, topic);
+            polls.add(poll);
+            if (aborted.get()) {
+                poll.cancel(false);
+            }
+            outcomes.add(poll
+                    .handle((satisfied, error) -> {
+                        boolean ok = error == null && satisfied;
+                        if (error instanceof TerminalStateException) {
+                            metrics.failed();
+                            // The entity will never be complete, so waiting on the other tables is wasted time
+                            aborted.set(true);
+                            for (CompletableFuture<Boolean> other : polls) {
+                                other.cancel(false);
+                            }
+                        } else if (error instanceof CancellationException) {
+                            metrics.failed(); // Stopped because another table failed
+                        } else {
+                            metrics.finish(ok);
+                        }
+                        return new TableOutcome(table, ok, ok ? Instant.now() : null,
+                                Duration.ofMillis(System.currentTimeMillis() - startMillis),
+                                ok ? row.get() : null, error);
+                    }));
+        }
+
+        return CompletableFuture.allOf(outcomes.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, TableOutcome> byTable = new LinkedHashMap<>();
+            for (CompletableFuture<TableOutcome> outcome : outcomes) {
+                TableOutcome tableOutcome = outcome.join();
+                byTable.put(tableOutcome.table(), tableOutcome);
+            }
+            return new Result(entity, Collections.unmodifiableMap(byTable),
+                    Duration.ofMillis(System.currentTimeMillis() - startMillis));
+        });
+    }
+
+    /**
+     * Blocking version of {@link #awaitAsync}.
+     */
+    public Result await(Duration timeout, PollStrategy pollStrategy) throws InterruptedException {
+        try {
+            return awaitAsync(timeout, pollStrategy).get();
+        } catch (ExecutionException e) {
+            // Table failures are reported in the result, so this is a bug in the wait itself
+            throw new IllegalStateException("Multi-table wait failed for " + entity, e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface TableCheck {
+        boolean call(AtomicReference<StreamingRowValidator.Result> row) throws Exception;
+    }
+
+    /**
+     * Combined outcome for one entity, in the order the tables were added.
+     */
+    public static final class Result {
+
+        private final String entity;
+        private final Map<String, TableOutcome> tables;
+        private final Duration elapsed;
+
+        private Result(String entity, Map<String, TableOutcome> tables, Duration elapsed) {
+            this.entity = entity;
+            this.tables = tables;
+            this.elapsed = elapsed;
+        }
+
+        public boolean allSatisfied() {
+            for (TableOutcome outcome : tables.values()) {
+                if (!outcome.satisfied()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public TableOutcome table(String table) {
+            TableOutcome outcome = tables.get(table);
+            if (outcome == null) {
+                throw new IllegalArgumentException("Table was not part of the wait: " + table);
+            }
+            return outcome;
+        }
+
+        public Map<String, TableOutcome> tables() {
+            return tables;
+        }
+
+        /**
+         * Wall time of the whole wait, i.e. of the slowest table.
+         */
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return entity + " " + tables.values() + " in " + elapsed.toMillis() + "ms";
+        }
+    }
+
+    /**
+     * Outcome of one table.
+     */
+    public static final class TableOutcome {
+
+        private final String table;
+        private final boolean satisfied;
+        private final Instant satisfiedAt;
+        private final Duration elapsed;
+        private final StreamingRowValidator.Result row;
+        private final Throwable error;
+
+        private TableOutcome(String table, boolean satisfied, Instant satisfiedAt, Duration elapsed,
+                             StreamingRowValidator.Result row, Throwable error) {
+            this.table = table;
+            this.satisfied = satisfied;
+            this.satisfiedAt = satisfiedAt;
+            this.elapsed = elapsed;
+            this.row = row;
+            this.error = error;
+        }
+
+        public String table() {
+            return table;
+        }
+
+        public boolean satisfied() {
+            return satisfied;
+        }
+
+        /**
+         * When the table was seen satisfied, or null if it never was.
+         */
+        public Instant satisfiedAt() {
+            return satisfiedAt;
+        }
+
+        /**
+         * Time from the start of the wait until this table was satisfied or gave up.
+         */
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Matching row for {@code rows(...)} checks, or null.
+         */
+        public StreamingRowValidator.Result row() {
+            return row;
+        }
+
+        /**
+         * Exception thrown by the check, or null if it only timed out.
+         */
+        public Throwable error() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return table + (satisfied ? " satisfied after " + elapsed.toMillis() + "ms"
+                    : error != null ? " failed: " + error : " timed out");
+        }
+    }
+}
@@ -1,34 +1,38 @@
+// CLIENT_DETAILS rows usually land within a few hundred ms of the API call, so poll fast first
+private static final PollStrategy CLIENT_DETAILS_POLL_STRATEGY =
+        PollStrategy.fastStartThenDecay(Duration.ofMillis(100), 5, Duration.ofMillis(2000));
+
+// Statuses an onboarding never leaves; seeing one fails the validation at once with the status in the message
+private static final String[] CLIENT_FAILURE_STATUSES = {"FAILED", "REJECTED"};
+
 public void validateClientOnboarding(String clientId, String operationsStatus) throws SQLException {
-    try (Connection conn = PdnDDBsManager.getInstance().getDataSource(rdrConfig).getConnection();
-         PreparedStatement ps = conn.prepareStatement(SELECT_CLMT_DTL_SQL)) {
-        
-        ps.setString(1, clientId);
-        
-        // Wait for data to appear (max 30 seconds)
-        ResultSet resultSet = waitForClientData(ps, 30000, 2000);
-        
-        // Validate all entries
-        boolean found = false;
-        do {
-            String dbClientId = resultSet.getString("CLMT_ID");
-            String dbClientStatus = resultSet.getString("CLMT_STAT");
-            
-            // Validate each record that matches our clientId
-            if (clientId.equals(dbClientId)) {
-                found = true;
-                AonAssert.assertEquals(dbClientId, clientId, 
-                    "Validating entry in the 'Client Details' Table for the Onboarded ClientId");
-                AonAssert.assertTrue(dbClientStatus.contains(operationsStatus), 
-                    "Validating Operation Status in the 'Client Details' Table");
-                
-                Logger.info("Operation Status: {} found for clientId: {} in 'Client Details' table", 
-                    dbClientStatus, clientId);
-            }
-        } while (resultSet.next());
-        
-        if (!found) {
-            throw new SQLException("No matching client record found for clientId: " + clientId);
-        }
+    // Failure statuses only count on rows matching the CLMT_ID expectation, whatever else the query returns
+    StreamingRowValidator validator = StreamingRowValidator.builder(SELECT_CLMT_DTL_SQL)
+            .capture("CLMT_ID", "CLMT_STAT")
+            .expect(WaitExpectation.equalTo("CLMT_ID", clientId))
+            .expect(WaitExpectation.contains("CLMT_STAT", operationsStatus))
+            .failOn("CLMT_STAT", CLIENT_FAILURE_STATUSES)
+            .build();
+    
+    try (Connection conn = PdnDDBsManager.getInstance().getDataSource(rdrConfig).getConnection()) {
+        
+        // Polls where past rows usually appeared on this database; falls back to the fixed schedule and 30 seconds
+        // until enough history exists
+        LearnedPollStrategy learned = LearnedPollStrategy.forQuery(DbLoadGovernor.dataSourceOf(conn),
+                SELECT_CLMT_DTL_SQL, CLIENT_DETAILS_POLL_STRATEGY);
+        
+        // Wait for the matching entry to appear
+        StreamingRowValidator.Result result = waitForClientData(conn, validator, clientId,
+                learned.timeout(Duration.ofMillis(30000)).toMillis(), learned);
+        
+        String dbClientStatus = result.value("CLMT_STAT");
+        AonAssert.assertEquals(result.value("CLMT_ID"), clientId, 
+            "Validating entry in the 'Client Details' Table for the Onboarded ClientId");
+        AonAssert.assertTrue(dbClientStatus.contains(operationsStatus), 
+            "Validating Operation Status in the 'Client Details' Table");
+        
+        Logger.info("Operation Status: {} found for clientId: {} in 'Client Details' table", 
+            dbClientStatus, clientId);
         
     } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
@@ -36,21 +40,57 @@ public void validateClientOnboarding(String clientId, String operationsStatus) t
     }
 }
 
-private ResultSet waitForClientData(PreparedStatement ps, long maxWaitMs, long retryIntervalMs) 
+/**
+ * Polls until the validator finds a matching row. Every poll closes its statement and cursor,
+ * and the caller gets an immutable result instead of an open ResultSet.
+ */
+private StreamingRowValidator.Result waitForClientData(Connection conn, StreamingRowValidator validator, String clientId,
+                                                       long maxWaitMs, PollStrategy pollStrategy) 
     throws SQLException, InterruptedException {
     
-    long startTime = System.currentTimeMillis();
+    return validator.await(conn, Duration.ofMillis(maxWaitMs), pollStrategy, clientId);
+}
+
+/**
+ * Checks 'Client Details' and 'Client Encryption Details' at the same time, so the worst case is
+ * 30 seconds in total instead of 30 seconds per table.
+ */
+public void validateClientOnboardingAndEncryption(String clientId, String operationsStatus, List<String> keyType)
+    throws SQLException {
+    StreamingRowValidator clientDetails = StreamingRowValidator.builder(SELECT_CLMT_DTL_SQL)
+            .capture("CLMT_ID", "CLMT_STAT")
+            .expect(WaitExpectation.equalTo("CLMT_ID", clientId))
+            .expect(WaitExpectation.contains("CLMT_STAT", operationsStatus))
+            .failOn("CLMT_STAT", CLIENT_FAILURE_STATUSES) // Also stops the encryption wait
+            .build();
+    StreamingRowValidator encryptionDetails = StreamingRowValidator.builder(SELECT_CLNT_ENCRYPT_DTL_SQL)
+            .capture("CLNT_ID", "KEY_TYPE")
+            .build();
     
-    while (true) {
-        ResultSet rs = ps.executeQuery();
-        if (rs.next()) {
-            return rs; // Data found
-        }
+    // One connection per table, because both tables are polled concurrently
+    try (Connection detailsConn = PdnDDBsManager.getInstance().getDataSource(rdrConfig).getConnection();
+         Connection encryptionConn = PdnDDBsManager.getInstance().getDataSource(rdrConfig).getConnection()) {
         
-        if (System.currentTimeMillis() - startTime > maxWaitMs) {
-            throw new SQLException("Timeout: Entry not found in database after waiting for " + maxWaitMs + "ms");
-        }
+        MultiTableWait.Result result = MultiTableWait.forEntity(clientId)
+                .rows("CLIENT_DETAILS", detailsConn, clientDetails, clientId)
+                .rows("CLIENT_ENCRYPTION_DETAILS", encryptionConn, encryptionDetails, clientId)
+                .await(Duration.ofMillis(30000), CLIENT_DETAILS_POLL_STRATEGY);
+        Logger.info("Onboarding validation for clientId: {}: {}", clientId, result);
         
-        Thread.sleep(retryIntervalMs);
+        // The outcome names the table and, for a failure, the state or error seen, so the report shows why
+        MultiTableWait.TableOutcome details = result.table("CLIENT_DETAILS");
+        MultiTableWait.TableOutcome encryption = result.table("CLIENT_ENCRYPTION_DETAILS");
+        AonAssert.assertTrue(details.satisfied(), 
+            "Validating entry and Operation Status in the 'Client Details' Table for the Onboarded ClientId: " + details);
+        AonAssert.assertTrue(encryption.satisfied(), 
+            "Validating Encryption Details for the onboarded clientId in the Client Encryption Details table: "
+                + encryption);
+        String respKeyType = encryption.row().value("KEY_TYPE");
+        AonAssert.assertTrue(keyType.contains(respKeyType), 
+            "Validating Key Status in the 'Client Encryption Details'");
+        
+    } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Client onboarding validation interrupted", e);
     }
-}
\ No newline at end of file
+}
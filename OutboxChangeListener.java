@@ -0,0 +1,73 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails the {@link OutboxChangeTrigger#OUTBOX_TABLE} table and publishes the table and key of new rows to
+ * {@link ChangeNotificationHub}. One small indexed query per tick serves every waiter, however many there are.
+ * Rows that have been published are deleted, so the outbox stays small; run one listener per outbox.
+ * Ticks run on {@link AsyncDbWait} check threads, not on its scheduler.
+ */
+public class OutboxChangeListener implements AutoCloseable {
+
+    private static final String SELECT_NEW_EVENTS_SQL = "SELECT ID, TABLE_NAME, ROW_KEY FROM "
+            + OutboxChangeTrigger.OUTBOX_TABLE + " WHERE ID > ? ORDER BY ID";
+    private static final String DELETE_PUBLISHED_SQL = "DELETE FROM " + OutboxChangeTrigger.OUTBOX_TABLE + " WHERE ID <= ?";
+
+    private final Connection conn;
+    private final ScheduledFuture<?> task;
+    private long lastSeenId;
+
+    /**
+     * Starts tailing the outbox from its current end.
+     *
+     * @param conn          dedicated connection, owned (and closed) by the listener
+     * @param tailInterval  how often the outbox is read
+     */
+    public OutboxChangeListener(Connection conn, Duration tailInterval) throws SQLException {
+        this.conn = conn;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(ID), 0) FROM " + OutboxChangeTrigger.OUTBOX_TABLE)) {
+            rs.next();
+            lastSeenId = rs.getLong(1);
+        }
+        ChangeNotificationHub.sourceStarted();
+        task = AsyncDbWait.scheduleBlocking(this::publishNewEvents, 0, tailInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void publishNewEvents() {
+        long publishedFrom = lastSeenId;
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_NEW_EVENTS_SQL)) {
+            ps.setLong(1, lastSeenId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lastSeenId = rs.getLong(1);
+                    ChangeNotificationHub.publish(rs.getString(2), rs.getString(3));
+                }
+            }
+            if (lastSeenId > publishedFrom) {
+                try (PreparedStatement delete = conn.prepareStatement(DELETE_PUBLISHED_SQL)) {
+                    delete.setLong(1, lastSeenId);
+                    delete.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            // Waiters fall back to regular polling until the outbox is readable again
+            System.err.println("Outbox read failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        task.cancel(false);
+        ChangeNotificationHub.sourceStopped();
+        conn.close();
+    }
+}
@@ -0,0 +1,89 @@
+package org.example;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * H2 row trigger that records every inserted or updated row key in the {@value #OUTBOX_TABLE} table,
+ * in the same transaction as the change itself. {@link OutboxChangeListener} tails the outbox and wakes
+ * waiting polls, which gives embedded-H2 tests the same push-based waits as PostgreSQL LISTEN/NOTIFY.
+ */
+public class OutboxChangeTrigger implements Trigger {
+
+    public static final String OUTBOX_TABLE = "DB_WAIT_OUTBOX";
+
+    private static final String INSERT_OUTBOX_SQL =
+            "INSERT INTO " + OUTBOX_TABLE + " (TABLE_NAME, ROW_KEY) VALUES (?, ?)";
+
+    private String tableName;
+    private int keyColumnIndex;
+
+    /**
+     * Creates the outbox table (if needed) and attaches the trigger to {@code table}.
+     * The row key is the table's first primary key column, or its first column if it has no primary key.
+     */
+    public static void install(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + OUTBOX_TABLE + " ("
+                    + "ID BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "TABLE_NAME VARCHAR(128) NOT NULL, "
+                    + "ROW_KEY VARCHAR(256) NOT NULL, "
+                    + "CREATED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + table + "_DB_WAIT AFTER INSERT, UPDATE ON " + table
+                    + " FOR EACH ROW CALL \"" + OutboxChangeTrigger.class.getName() + "\"");
+        }
+    }
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before, int type)
+            throws SQLException {
+        this.tableName = tableName;
+        this.keyColumnIndex = resolveKeyColumnIndex(conn.getMetaData(), schemaName, tableName);
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (newRow == null || newRow[keyColumnIndex] == null) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_OUTBOX_SQL)) {
+            ps.setString(1, tableName);
+            ps.setString(2, String.valueOf(newRow[keyColumnIndex]));
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    @Override
+    public void remove() {
+        // Nothing to release
+    }
+
+    private static int resolveKeyColumnIndex(DatabaseMetaData metaData, String schemaName, String tableName)
+            throws SQLException {
+        String keyColumn = null;
+        try (ResultSet rs = metaData.getPrimaryKeys(null, schemaName, tableName)) {
+            while (rs.next()) {
+                if (rs.getShort("KEY_SEQ") == 1) {
+                    keyColumn = rs.getString("COLUMN_NAME");
+                }
+            }
+        }
+        if (keyColumn == null) {
+            return 0;
+        }
+        try (ResultSet rs = metaData.getColumns(null, schemaName, tableName, keyColumn)) {
+            return rs.next() ? rs.getInt("ORDINAL_POSITION") - 1 : 0;
+        }
+    }
+}
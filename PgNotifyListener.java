@@ -0,0 +1,91 @@
+package org.example;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listens on a PostgreSQL NOTIFY channel and publishes each payload, {@code table:key}, to
+ * {@link ChangeNotificationHub}. NOTIFY is delivered only after the writing transaction commits. A matching
+ * trigger looks like:
+ * <pre>
+ * CREATE FUNCTION client_details_notify() RETURNS trigger AS $$
+ * BEGIN
+ *     PERFORM pg_notify('db_wait', TG_TABLE_NAME || ':' || NEW.clnt_id::text);
+ *     RETURN NEW;
+ * END $$ LANGUAGE plpgsql;
+ *
+ * CREATE TRIGGER client_details_db_wait AFTER INSERT OR UPDATE ON client_details
+ *     FOR EACH ROW EXECUTE FUNCTION client_details_notify();
+ * </pre>
+ */
+public class PgNotifyListener implements AutoCloseable {
+
+    public static final String DEFAULT_CHANNEL = "db_wait";
+
+    private static final int RECEIVE_TIMEOUT_MILLIS = 500;
+
+    private final Connection conn;
+    private final Thread thread;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    /**
+     * @param conn     dedicated PostgreSQL connection, owned (and closed) by the listener
+     * @param channel  NOTIFY channel the triggers publish to
+     */
+    public PgNotifyListener(Connection conn, String channel) throws SQLException {
+        this.conn = conn;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("LISTEN " + channel);
+        }
+        ChangeNotificationHub.sourceStarted();
+        thread = new Thread(this::receive, "db-wait-pg-listener-" + channel);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void receive() {
+        try {
+            PGConnection pgConn = conn.unwrap(PGConnection.class);
+            while (running.get()) {
+                PGNotification[] notifications = pgConn.getNotifications(RECEIVE_TIMEOUT_MILLIS);
+                if (notifications == null) {
+                    continue;
+                }
+                for (PGNotification notification : notifications) {
+                    String payload = notification.getParameter();
+                    int separator = payload.indexOf(':');
+                    if (separator > 0) {
+                        ChangeNotificationHub.publish(payload.substring(0, separator), payload.substring(separator + 1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // Waiters fall back to regular polling
+            System.err.println("PostgreSQL notification listener stopped: " + e.getMessage());
+        } finally {
+            stop();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stop();
+        try {
+            thread.join(RECEIVE_TIMEOUT_MILLIS * 2L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        conn.close();
+    }
+
+    private void stop() {
+        if (running.compareAndSet(true, false)) {
+            ChangeNotificationHub.sourceStopped();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fires many API calls concurrently with a bounded number in flight and collects the returned ids, so the records
+ * can then be verified in one batched database pass instead of one blocking wait per call.
+ * <pre>
+ * PipelinedApiFanOut.Result sent = PipelinedApiFanOut.withMaxInFlight(32).fire(names, name -&gt; RestAssured
+ *         .given().header("Content-Type", "application/json").body("{\"name\":\"" + name + "\"}")
+ *         .when().post("/api/users")
+ *         .then().statusCode(201)
+ *         .extract().jsonPath().getString("id"));
+ * Map&lt;String, Boolean&gt; found = sent.verify(conn, "users", "id", "id", sent.idsAsExpected());
+ * </pre>
+ * The call is a plain function, so it can target a real service or a local stub HTTP server; only
+ * {@code maxInFlight} threads are used however many calls are made.
+ */
+public final class PipelinedApiFanOut {
+
+    private final int maxInFlight;
+
+    private PipelinedApiFanOut(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public static PipelinedApiFanOut withMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        return new PipelinedApiFanOut(maxInFlight);
+    }
+
+    /**
+     * Makes one API call per request, at most {@code maxInFlight} at a time, and waits for all of them.
+     *
+     * @param apiCall sends one request and returns the id of the created or updated entity
+     */
+    public <T> Result fire(List<T> requests, ApiCall<T> apiCall) {
+        long startMillis = System.currentTimeMillis();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxInFlight, Math.max(1, requests.size())), r -> {
+            Thread thread = new Thread(r, "api-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+            for (T request : requests) {
+                calls.add(CompletableFuture.supplyAsync(() -> {
+                    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        return apiCall.send(request);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("API call failed for " + request, e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }, executor));
+            }
+
+            List<String> ids = new ArrayList<>();
+            Map<Integer, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < calls.size(); i++) {
+                try {
+                    ids.add(calls.get(i).join());
+                } catch (Exception e) {
+                    ids.add(null);
+                    failures.put(i, e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            return new Result(Collections.unmodifiableList(ids), Collections.unmodifiableMap(failures),
+                    peakInFlight.get(), Duration.ofMillis(System.currentTimeMillis() - startMillis));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ApiCall<T> {
+        String send(T request) throws Exception;
+    }
+
+    /**
+     * Ids returned by the calls, in request order; null where the call failed.
+     */
+    public static final class Result {
+
+        private final List<String> ids;
+        private final Map<Integer, Throwable> failures;
+        private final int peakInFlight;
+        private final Duration elapsed;
+
+        private Result(List<String> ids, Map<Integer, Throwable> failures, int peakInFlight, Duration elapsed) {
+            this.ids = ids;
+            this.failures = failures;
+            this.peakInFlight = peakInFlight;
+            this.elapsed = elapsed;
+        }
+
+        public List<String> ids() {
+            return ids;
+        }
+
+        /**
+         * Failed calls by request index.
+         */
+        public Map<Integer, Throwable> failures() {
+            return failures;
+        }
+
+        public int peakInFlight() {
+            return peakInFlight;
+        }
+
+        public Duration elapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Maps every returned id to {@code expectedValue}, e.g. the status all entities should reach.
+         */
+        public Map<String, String> idsExpecting(String expectedValue) {
+            Map<String, String> expected = new LinkedHashMap<>();
+            for (String id : ids) {
+                if (id != null) {
+                    expected.put(id, expectedValue);
+                }
+            }
+            return expected;
+        }
+
+        /**
+         * Maps every returned id to itself, for checks that only need the row to exist (key column = id).
+         */
+        public Map<String, String> idsAsExpected() {
+            Map<String, String> expected = new LinkedHashMap<>();
+            for (String id : ids) {
+                if (id != null) {
+                    expected.put(id, id);
+                }
+            }
+            return expected;
+        }
+
+        /**
+         * Verifies every returned id in one batched pass (see {@link DbWaitUtil#waitForRecords}).
+         */
+        public Map<String, Boolean> verify(Connection conn, String table, String keyColumn, String columnLabel,
+                                           Map<String, String> expectedValues) {
+            return DbWaitUtil.waitForRecords(conn, table, keyColumn, columnLabel, expectedValues);
+        }
+
+        /**
+         * Same as {@link #verify(Connection, String, String, String, Map)} with a custom poll schedule.
+         */
+        public Map<String, Boolean> verify(Connection conn, String table, String keyColumn, String columnLabel,
+                                           Map<String, String> expectedValues, PollStrategy pollStrategy) {
+            return DbWaitUtil.waitForRecords(conn, table, keyColumn, columnLabel, expectedValues, pollStrategy);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Observed visibility delays per data source and query shape, kept across runs in a local file so
+ * {@link LearnedPollStrategy} can schedule polls around when rows usually appear. The same query against a replica
+ * or an in-memory test database keeps a history of its own. {@link WaitMetrics} records every wait that found its
+ * row here. A timed-out wait is recorded as censored: its delay is only a lower bound, so it is left out of the
+ * samples, but while one is in the history {@link LearnedPollStrategy} does not shorten the timeout.
+ * <p>
+ * The file is named by the {@code dbwait.history.file} system property (default {@value #DEFAULT_HISTORY_FILE}),
+ * read on first use and rewritten at JVM shutdown. Set the property to {@code none} to keep history in memory only.
+ * Censored delays are written with a trailing {@code +}.
+ */
+public final class PollHistory {
+
+    public static final String HISTORY_FILE_PROPERTY = "dbwait.history.file";
+    public static final String DEFAULT_HISTORY_FILE = "target/db-wait-history.tsv";
+    private static final int MAX_SAMPLES_PER_SHAPE = 500;
+
+    private static final ConcurrentMap<String, Deque<Long>> SAMPLES = new ConcurrentHashMap<>();
+
+    static {
+        load();
+        Runtime.getRuntime().addShutdownHook(new Thread(PollHistory::saveAtShutdown, "db-wait-history-save"));
+    }
+
+    private PollHistory() {
+    }
+
+    /**
+     * Adds one observed delay, dropping the oldest once the shape has {@value #MAX_SAMPLES_PER_SHAPE} samples.
+     *
+     * @param dataSource  e.g. from {@link DbLoadGovernor#dataSourceOf}, or null when it is not known
+     */
+    public static void record(String dataSource, String sql, long visibleMillis) {
+        add(historyKey(dataSource, sql), Math.max(0, visibleMillis));
+    }
+
+    /**
+     * Adds a wait that gave up after {@code elapsedMillis} without seeing its row. Takes a place in the history like
+     * a delay, so it ages out the same way.
+     */
+    public static void recordTimeout(String dataSource, String sql, long elapsedMillis) {
+        add(historyKey(dataSource, sql), censored(Math.max(0, elapsedMillis)));
+    }
+
+    /**
+     * @param sample  a delay, or a {@link #censored} one
+     */
+    private static void add(String historyKey, long sample) {
+        Deque<Long> samples = SAMPLES.computeIfAbsent(historyKey, k -> new ArrayDeque<>());
+        synchronized (samples) {
+            samples.addLast(sample);
+            if (samples.size() > MAX_SAMPLES_PER_SHAPE) {
+                samples.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @return the recorded delays for {@code sql} on {@code dataSource}, sorted ascending, without timed-out waits
+     */
+    public static List<Long> sortedSamples(String dataSource, String sql) {
+        Deque<Long> samples = SAMPLES.get(historyKey(dataSource, sql));
+        if (samples == null) {
+            return Collections.emptyList();
+        }
+        List<Long> sorted = new ArrayList<>();
+        synchronized (samples) {
+            for (Long sample : samples) {
+                if (sample >= 0) {
+                    sorted.add(sample);
+                }
+            }
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @return how many of the waits still in the history for {@code sql} on {@code dataSource} timed out
+     */
+    public static int timeouts(String dataSource, String sql) {
+        Deque<Long> samples = SAMPLES.get(historyKey(dataSource, sql));
+        if (samples == null) {
+            return 0;
+        }
+        int timeouts = 0;
+        synchronized (samples) {
+            for (Long sample : samples) {
+                if (sample < 0) {
+                    timeouts++;
+                }
+            }
+        }
+        return timeouts;
+    }
+
+    // Timed-out waits are kept as negative numbers, so one deque holds both in the order they happened
+    private static long censored(long elapsedMillis) {
+        return -elapsedMillis - 1;
+    }
+
+    /**
+     * Query shape: the SQL with runs of whitespace collapsed, so formatting differences share one history.
+     */
+    static String shapeOf(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String historyKey(String dataSource, String sql) {
+        return dataSource == null ? shapeOf(sql) : shapeOf(sql) + " @ " + dataSource;
+    }
+
+    public static void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Deque<Long>> entry : SAMPLES.entrySet()) {
+                StringBuilder line = new StringBuilder(entry.getKey()).append('\t');
+                synchronized (entry.getValue()) {
+                    boolean first = true;
+                    for (Long sample : entry.getValue()) {
+                        line.append(first ? "" : ",");
+                        if (sample >= 0) {
+                            line.append(sample);
+                        } else {
+                            line.append(censored(sample)).append('+'); // censored() is its own inverse
+                        }
+                        first = false;
+                    }
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    private static void load() {
+        String historyFile = System.getProperty(HISTORY_FILE_PROPERTY, DEFAULT_HISTORY_FILE);
+        if ("none".equalsIgnoreCase(historyFile)) {
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(historyFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                String historyKey = line.substring(0, tab);
+                for (String sample : line.substring(tab + 1).split(",")) {
+                    String value = sample.trim();
+                    if (value.endsWith("+")) {
+                        add(historyKey, censored(Long.parseLong(value.substring(0, value.length() - 1))));
+                    } else if (!value.isEmpty()) {
+                        add(historyKey, Long.parseLong(value));
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // First run: nothing learned yet
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable wait history " + historyFile + ": " + e.getMessage());
+        }
+    }
+
+    private static void saveAtShutdown() {
+        String historyFile = System.getProperty(HISTORY_FILE_PROPERTY, DEFAULT_HISTORY_FILE);
+        if (SAMPLES.isEmpty() || "none".equalsIgnoreCase(historyFile)) {
+            return;
+        }
+        try {
+            save(Paths.get(historyFile));
+        } catch (IOException e) {
+            System.err.println("Failed to write wait history to " + historyFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long a wait loop pauses between database polls.
+ * Wait loops poll once immediately and then ask the strategy for the delay before each retry.
+ */
+@FunctionalInterface
+public interface PollStrategy {
+
+    /**
+     * @param attempt number of polls already made (1 after the first, immediate poll)
+     * @return delay before the next poll
+     */
+    Duration nextDelay(int attempt);
+
+    /**
+     * Same delay between every poll, matching the original hard-coded intervals.
+     */
+    static PollStrategy fixed(Duration interval) {
+        return attempt -> interval;
+    }
+
+    /**
+     * Delay grows by {@code multiplier} per poll up to {@code max}; each delay is shortened by a random
+     * share of up to {@code jitter} (0..1) so parallel waiters do not poll in lock-step.
+     */
+    static PollStrategy exponentialWithJitter(Duration initial, Duration max, double multiplier, double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        return attempt -> {
+            double base = Math.min(max.toMillis(), initial.toMillis() * Math.pow(multiplier, Math.max(0, attempt - 1)));
+            double randomized = base * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+            return Duration.ofMillis(Math.max(1, Math.round(randomized)));
+        };
+    }
+
+    /**
+     * Polls every {@code fastInterval} for the first {@code fastPolls} polls to catch rows that land
+     * right after the API call, then doubles the delay each poll until it settles at {@code slowInterval}.
+     */
+    static PollStrategy fastStartThenDecay(Duration fastInterval, int fastPolls, Duration slowInterval) {
+        return attempt -> {
+            if (attempt <= fastPolls) {
+                return fastInterval;
+            }
+            int doublings = Math.min(attempt - fastPolls, 30);
+            long millis = Math.min(slowInterval.toMillis(), fastInterval.toMillis() << doublings);
+            return Duration.ofMillis(millis);
+        };
+    }
+
+    /**
+     * Sleeps for the strategy's next delay, but never past {@code deadlineMillis}
+     * (a {@link System#currentTimeMillis()} timestamp).
+     */
+    default void sleepBeforeNextPoll(int attempt, long deadlineMillis) throws InterruptedException {
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        long delay = Math.min(nextDelay(attempt).toMillis(), remaining);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test for the API-then-wait-for-DB flow: API calls are started at a fixed target rate whatever
+ * the response times, and every request is tracked until its row is visible in the database.
+ * <p>
+ * Coordinated omission is corrected by timing from each request's <em>intended</em> start on the fixed schedule,
+ * not from when a worker got round to sending it, so a stalled API or a saturated worker pool shows up as latency
+ * instead of silently lowering the offered load. Three histograms (microseconds) are kept:
+ * <ul>
+ *     <li>ack: intended start to API acknowledgement</li>
+ *     <li>propagation: API acknowledgement to the row being visible (the async write lag)</li>
+ *     <li>endToEnd: intended start to the row being visible</li>
+ * </ul>
+ * Visibility is detected by one batched {@code SELECT key FROM table WHERE key IN (...)} every
+ * {@code visibilityPollInterval}, which also bounds the resolution of the propagation figures.
+ * <pre>
+ * String user = WorkerNamespace.key("load-user"); // On the test thread, not in the API call
+ * PropagationLoadGenerator.Report report = PropagationLoadGenerator.builder()
+ *         .targetRatePerSecond(200)
+ *         .duration(Duration.ofSeconds(60))
+ *         .apiCall(seq -&gt; postUserAndReturnId(user + "-" + seq))
+ *         .visibleIn(conn, "users", "id")
+ *         .build()
+ *         .run();
+ * report.writeHistograms(Paths.get("target/propagation-200rps"));
+ * </pre>
+ * Run it at increasing rates to see how propagation degrades with offered load.
+ */
+public final class PropagationLoadGenerator {
+
+    private static final int MAX_IN_LIST_SIZE = 1000; // Oracle rejects IN lists longer than 1000
+
+    private final double targetRatePerSecond;
+    private final Duration duration;
+    private final int maxInFlight;
+    private final ApiCall apiCall;
+    private final Connection conn;
+    private final String table;
+    private final String keyColumn;
+    private final Duration visibilityPollInterval;
+    private final Duration visibilityTimeout;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final LatencyHistogram ack = new LatencyHistogram();
+    private final LatencyHistogram propagation = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong visible = new AtomicLong();
+    private final AtomicLong apiErrors = new AtomicLong();
+    private final AtomicLong visibilityTimeouts = new AtomicLong();
+    private final AtomicLong visibilityQueries = new AtomicLong();
+
+    private PropagationLoadGenerator(Builder builder) {
+        this.targetRatePerSecond = builder.targetRatePerSecond;
+        this.duration = builder.duration;
+        this.maxInFlight = builder.maxInFlight;
+        this.apiCall = builder.apiCall;
+        this.conn = builder.conn;
+        this.table = builder.table;
+        this.keyColumn = builder.keyColumn;
+        this.visibilityPollInterval = builder.visibilityPollInterval;
+        this.visibilityTimeout = builder.visibilityTimeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Drives the load for the configured duration, then waits (up to the visibility timeout) for the last rows.
+     * A generator runs once.
+     */
+    public Report run() throws InterruptedException {
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "load-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The IN queries block, so they run on a check thread rather than the scheduler that times every wait
+        ScheduledFuture<?> visibilityPoller = AsyncDbWait.scheduleBlocking(this::pollVisibility,
+                0, visibilityPollInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / targetRatePerSecond);
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + duration.toNanos();
+        long dispatchNanos;
+        try {
+            for (long seq = 0; ; seq++) {
+                long intendedNanos = startNanos + seq * intervalNanos;
+                if (intendedNanos >= endNanos) {
+                    break;
+                }
+                long wait = intendedNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Load generator interrupted");
+                }
+                long requestSeq = seq;
+                workers.execute(() -> send(requestSeq, intendedNanos));
+            }
+            dispatchNanos = System.nanoTime() - startNanos;
+
+            workers.shutdown();
+            workers.awaitTermination(visibilityTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            long drainDeadline = System.nanoTime() + visibilityTimeout.toNanos();
+            while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+                Thread.sleep(visibilityPollInterval.toMillis());
+            }
+        } finally {
+            workers.shutdownNow();
+            visibilityPoller.cancel(false);
+        }
+        visibilityTimeouts.addAndGet(pending.size());
+        pending.clear();
+
+        return new Report(targetRatePerSecond, sent.get(), visible.get(), apiErrors.get(), visibilityTimeouts.get(),
+                visibilityQueries.get(), Duration.ofNanos(dispatchNanos), ack, propagation, endToEnd);
+    }
+
+    private void send(long seq, long intendedNanos) {
+        String key;
+        try {
+            key = apiCall.send(seq);
+        } catch (Exception e) {
+            apiErrors.incrementAndGet();
+            System.err.println("API call " + seq + " failed: " + e.getMessage());
+            return;
+        }
+        if (key == null) {
+            // Nothing to look for in the table, so the request could never become visible or time out
+            apiErrors.incrementAndGet();
+            System.err.println("API call " + seq + " returned no key");
+            return;
+        }
+        long ackNanos = System.nanoTime();
+        sent.incrementAndGet();
+        ack.record(TimeUnit.NANOSECONDS.toMicros(ackNanos - intendedNanos));
+        pending.put(key, new Pending(intendedNanos, ackNanos));
+    }
+
+    private void pollVisibility() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < keys.size(); from += MAX_IN_LIST_SIZE) {
+            List<String> chunk = keys.subList(from, Math.min(from + MAX_IN_LIST_SIZE, keys.size()));
+            String sql = "SELECT " + keyColumn + " FROM " + table + " WHERE " + keyColumn + " IN (" + placeholders(chunk.size()) + ")";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                visibilityQueries.incrementAndGet();
+                try (ResultSet rs = ps.executeQuery()) {
+                    long seenNanos = System.nanoTime();
+                    while (rs.next()) {
+                        Pending request = pending.remove(rs.getString(1));
+                        if (request != null) {
+                            visible.incrementAndGet();
+                            propagation.record(TimeUnit.NANOSECONDS.toMicros(seenNanos - request.ackNanos));
+                            endToEnd.record(TimeUnit.NANOSECONDS.toMicros(seenNanos - request.intendedNanos));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Visibility poll failed: " + e.getMessage());
+            }
+        }
+        expireOverdue();
+    }
+
+    private void expireOverdue() {
+        long cutoff = System.nanoTime() - visibilityTimeout.toNanos();
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().ackNanos < cutoff) {
+                it.remove();
+                visibilityTimeouts.incrementAndGet();
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sends API call number {@code seq} and returns the key of the row it writes, once the API has acknowledged it.
+     * A null key counts as an API error.
+     */
+    @FunctionalInterface
+    public interface ApiCall {
+        String send(long seq) throws Exception;
+    }
+
+    private static final class Pending {
+
+        private final long intendedNanos;
+        private final long ackNanos;
+
+        private Pending(long intendedNanos, long ackNanos) {
+            this.intendedNanos = intendedNanos;
+            this.ackNanos = ackNanos;
+        }
+    }
+
+    public static final class Builder {
+
+        private double targetRatePerSecond = 10;
+        private Duration duration = Duration.ofSeconds(30);
+        private int maxInFlight = 64;
+        private ApiCall apiCall;
+        private Connection conn;
+        private String table;
+        private String keyColumn;
+        private Duration visibilityPollInterval = Duration.ofMillis(10);
+        private Duration visibilityTimeout = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        public Builder targetRatePerSecond(double rate) {
+            if (rate <= 0) {
+                throw new IllegalArgumentException("targetRatePerSecond must be positive");
+            }
+            this.targetRatePerSecond = rate;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Worker threads making API calls. Requests beyond this queue up, and the queueing time is counted.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder apiCall(ApiCall apiCall) {
+            this.apiCall = apiCall;
+            return this;
+        }
+
+        /**
+         * Where the written rows become visible. The connection is only used by the visibility poller.
+         */
+        public Builder visibleIn(Connection conn, String table, String keyColumn) {
+            this.conn = conn;
+            this.table = WaitExpectation.requireTableName(table);
+            this.keyColumn = WaitExpectation.requireIdentifier(keyColumn);
+            return this;
+        }
+
+        public Builder visibilityPollInterval(Duration interval) {
+            this.visibilityPollInterval = interval;
+            return this;
+        }
+
+        /**
+         * How long after the API ack a row may take to appear before it counts as a visibility timeout.
+         */
+        public Builder visibilityTimeout(Duration timeout) {
+            this.visibilityTimeout = timeout;
+            return this;
+        }
+
+        public PropagationLoadGenerator build() {
+            if (apiCall == null || conn == null) {
+                throw new IllegalStateException("apiCall and visibleIn(...) are required");
+            }
+            return new PropagationLoadGenerator(this);
+        }
+    }
+
+    /**
+     * Outcome of one run. Histogram values are in microseconds.
+     */
+    public static final class Report {
+
+        private final double targetRatePerSecond;
+        private final long sent;
+        private final long visible;
+        private final long apiErrors;
+        private final long visibilityTimeouts;
+        private final long visibilityQueries;
+        private final Duration loadDuration;
+        private final LatencyHistogram ack;
+        private final LatencyHistogram propagation;
+        private final LatencyHistogram endToEnd;
+
+        private Report(double targetRatePerSecond, long sent, long visible, long apiErrors, long visibilityTimeouts,
+                       long visibilityQueries, Duration loadDuration, LatencyHistogram ack, LatencyHistogram propagation,
+                       LatencyHistogram endToEnd) {
+            this.targetRatePerSecond = targetRatePerSecond;
+            this.sent = sent;
+            this.visible = visible;
+            this.apiErrors = apiErrors;
+            this.visibilityTimeouts = visibilityTimeouts;
+            this.visibilityQueries = visibilityQueries;
+            this.loadDuration = loadDuration;
+            this.ack = ack;
+            this.propagation = propagation;
+            this.endToEnd = endToEnd;
+        }
+
+        public long sent() {
+            return sent;
+        }
+
+        public long visible() {
+            return visible;
+        }
+
+        public long apiErrors() {
+            return apiErrors;
+        }
+
+        public long visibilityTimeouts() {
+            return visibilityTimeouts;
+        }
+
+        public LatencyHistogram ack() {
+            return ack;
+        }
+
+        public LatencyHistogram propagation() {
+            return propagation;
+        }
+
+        public LatencyHistogram endToEnd() {
+            return endToEnd;
+        }
+
+        /**
+         * Writes ack.hgrm, propagation.hgrm and end-to-end.hgrm (values in milliseconds) into {@code directory}.
+         */
+        public void writeHistograms(Path directory) throws IOException {
+            Files.createDirectories(directory);
+            writeHistogram(directory.resolve("ack.hgrm"), ack);
+            writeHistogram(directory.resolve("propagation.hgrm"), propagation);
+            writeHistogram(directory.resolve("end-to-end.hgrm"), endToEnd);
+        }
+
+        private static void writeHistogram(Path file, LatencyHistogram histogram) throws IOException {
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                histogram.writePercentileDistribution(out, 1000.0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "target %.1f/s, sent %d (%.1f/s), visible %d, api errors %d, visibility timeouts %d, "
+                            + "visibility queries %d%n  ack         %s%n  propagation %s%n  end-to-end  %s",
+                    targetRatePerSecond, sent, sent * 1000.0 / Math.max(1, loadDuration.toMillis()), visible, apiErrors,
+                    visibilityTimeouts, visibilityQueries, summary(ack), summary(propagation), summary(endToEnd));
+        }
+
+        private static String summary(LatencyHistogram h) {
+            return String.format(Locale.ROOT, "p50 %.1fms p95 %.1fms p99 %.1fms max %.1fms",
+                    h.percentile(50) / 1000.0, h.percentile(95) / 1000.0, h.percentile(99) / 1000.0, h.max() / 1000.0);
+        }
+    }
+}
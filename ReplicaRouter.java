@@ -0,0 +1,250 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends wait polls to a read replica while it keeps up, and to the primary otherwise. Replica lag is measured with
+ * a heartbeat row: the router stamps the current time into {@value #DEFAULT_HEARTBEAT_TABLE} on the primary every
+ * heartbeat interval and reads it back from the replica, so the lag is how old the stamp visible on the replica is.
+ * <p>
+ * A poll goes to the replica only when the measured lag is within the lag budget and the wait is not yet near its
+ * deadline; in the last {@code escalateBefore} of a wait, or while the lag is unknown or over budget, it goes to
+ * the primary. The replica takes the routine polling load, and a wait never times out just because the replica
+ * was behind.
+ * <pre>
+ * try (ReplicaRouter router = ReplicaRouter.builder(primaryPool, replicaPool)
+ *         .lagBudget(Duration.ofMillis(500))
+ *         .start()) {
+ *     DbWaitUtil.waitForRecord(router, SELECT_CLNT_DTL_SQL, clientId,
+ *             WaitExpectation.equalTo("CLNT_STAT", "ONBOARDED"), pollStrategy);
+ * }
+ * </pre>
+ * The heartbeat table must exist on the primary (see {@link #createHeartbeatTable}) and be replicated. The pools
+ * stay owned by the caller. {@link DelayedReplication} simulates a lagging replica between two local databases.
+ */
+public final class ReplicaRouter implements AutoCloseable {
+
+    public static final String DEFAULT_HEARTBEAT_TABLE = "DB_WAIT_HEARTBEAT";
+    private static final int HEARTBEAT_ID = 1;
+
+    private final DbConnectionPool primary;
+    private final DbConnectionPool replica;
+    private final long lagBudgetMillis;
+    private final long escalateBeforeMillis;
+    private final String updateBeatSql;
+    private final String insertBeatSql;
+    private final String readBeatSql;
+    private final ScheduledFuture<?> heartbeat;
+    private final AtomicLong replicaPolls = new AtomicLong();
+    private final AtomicLong primaryPolls = new AtomicLong();
+    private volatile long lastBeatMillis = -1;
+    private volatile long replicaLagMillis = -1; // -1 while unknown
+
+    private ReplicaRouter(Builder builder) {
+        this.primary = builder.primary;
+        this.replica = builder.replica;
+        this.lagBudgetMillis = builder.lagBudget.toMillis();
+        this.escalateBeforeMillis = builder.escalateBefore.toMillis();
+        String table = WaitExpectation.requireTableName(builder.heartbeatTable);
+        this.updateBeatSql = "UPDATE " + table + " SET BEAT_MILLIS = ? WHERE ID = " + HEARTBEAT_ID;
+        this.insertBeatSql = "INSERT INTO " + table + " (ID, BEAT_MILLIS) VALUES (" + HEARTBEAT_ID + ", ?)";
+        this.readBeatSql = "SELECT BEAT_MILLIS FROM " + table + " WHERE ID = " + HEARTBEAT_ID;
+        long intervalMillis = builder.heartbeatInterval.toMillis();
+        this.heartbeat = AsyncDbWait.scheduleBlocking(this::beat, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder(DbConnectionPool primary, DbConnectionPool replica) {
+        return new Builder(primary, replica);
+    }
+
+    /**
+     * Creates the heartbeat table unless it already exists; run it on the primary, or on both sides when replication
+     * is simulated.
+     */
+    public static void createHeartbeatTable(Connection conn, String table) throws SQLException {
+        if (WorkerNamespace.tableExists(conn, WaitExpectation.requireTableName(table))) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE " + table
+                    + " (ID INT PRIMARY KEY, BEAT_MILLIS BIGINT NOT NULL)");
+        }
+    }
+
+    /**
+     * Pool the next poll of a wait ending at {@code deadlineMillis} should use.
+     */
+    public DbConnectionPool route(long deadlineMillis) {
+        long lag = replicaLagMillis;
+        boolean replicaFresh = lag >= 0 && lag <= lagBudgetMillis;
+        boolean nearDeadline = deadlineMillis - System.currentTimeMillis() <= escalateBeforeMillis;
+        if (replicaFresh && !nearDeadline) {
+            replicaPolls.incrementAndGet();
+            return replica;
+        }
+        primaryPolls.incrementAndGet();
+        return primary;
+    }
+
+    /**
+     * Polls {@code check} on the routed data source until it returns true or {@code timeout} elapses, like
+     * {@link AsyncDbWait#waitUntil(java.util.concurrent.Callable, Duration, PollStrategy, String)}. Every poll is
+     * routed first, queues for a {@link DbLoadGovernor} permit on the chosen side without holding a thread, then
+     * leases a connection from the chosen pool.
+     */
+    public CompletableFuture<Boolean> waitUntil(RoutedCheck check, Duration timeout, PollStrategy pollStrategy,
+                                                String notificationTopic) {
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        // Polls of one wait never overlap, so the side picked for a poll's permit is still there when it runs
+        AtomicReference<DbConnectionPool> routed = new AtomicReference<>();
+        return AsyncDbWait.waitUntilGoverned(() -> {
+            DbConnectionPool pool = route(deadlineMillis);
+            routed.set(pool);
+            return pool.dataSource();
+        }, () -> {
+            try (DbConnectionPool.Lease lease = routed.get().lease()) {
+                return check.check(lease.connection());
+            }
+        }, timeout, pollStrategy, notificationTopic);
+    }
+
+    /**
+     * Name of the primary's data source (see {@link DbConnectionPool#dataSource()}). Routed waits keep their
+     * {@link PollHistory} under it wherever each poll ran, apart from the same query's history on other databases.
+     */
+    public String dataSource() throws SQLException {
+        return primary.dataSource();
+    }
+
+    /**
+     * Upper bound on the replica's lag as of the last heartbeat, or null if it could not be measured.
+     */
+    public Duration replicaLag() {
+        long lag = replicaLagMillis;
+        return lag < 0 ? null : Duration.ofMillis(lag);
+    }
+
+    public long replicaPolls() {
+        return replicaPolls.get();
+    }
+
+    public long primaryPolls() {
+        return primaryPolls.get();
+    }
+
+    private void beat() {
+        long now = System.currentTimeMillis();
+        try (DbConnectionPool.Lease lease = primary.lease()) {
+            PreparedStatement update = lease.prepare(updateBeatSql);
+            update.setLong(1, now);
+            if (update.executeUpdate() == 0) {
+                PreparedStatement insert = lease.prepare(insertBeatSql);
+                insert.setLong(1, now);
+                insert.executeUpdate();
+            }
+            if (!lease.connection().getAutoCommit()) {
+                lease.connection().commit();
+            }
+            lastBeatMillis = now;
+        } catch (SQLException e) {
+            System.err.println("Replica heartbeat write failed: " + e.getMessage());
+        }
+
+        try (DbConnectionPool.Lease lease = replica.lease();
+             ResultSet rs = lease.prepare(readBeatSql).executeQuery()) {
+            if (rs.next()) {
+                long visibleBeat = rs.getLong(1);
+                // Seeing the stamp just written means the replica is caught up; otherwise it is at most this far behind
+                replicaLagMillis = visibleBeat >= lastBeatMillis ? 0 : Math.max(0, now - visibleBeat);
+            } else {
+                replicaLagMillis = -1;
+            }
+        } catch (SQLException e) {
+            replicaLagMillis = -1;
+            System.err.println("Replica heartbeat read failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the heartbeat; the pools are left open.
+     */
+    @Override
+    public void close() {
+        heartbeat.cancel(false);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaRouter{lag=" + replicaLag() + ", budget=" + lagBudgetMillis + "ms, replicaPolls="
+                + replicaPolls + ", primaryPolls=" + primaryPolls + "}";
+    }
+
+    /**
+     * Poll check run on whichever connection the router picked.
+     */
+    @FunctionalInterface
+    public interface RoutedCheck {
+        boolean check(Connection conn) throws Exception;
+    }
+
+    public static final class Builder {
+
+        private final DbConnectionPool primary;
+        private final DbConnectionPool replica;
+        private String heartbeatTable = DEFAULT_HEARTBEAT_TABLE;
+        private Duration heartbeatInterval = Duration.ofMillis(250);
+        private Duration lagBudget = Duration.ofSeconds(1);
+        private Duration escalateBefore = Duration.ofSeconds(5);
+
+        private Builder(DbConnectionPool primary, DbConnectionPool replica) {
+            this.primary = primary;
+            this.replica = replica;
+        }
+
+        public Builder heartbeatTable(String table) {
+            this.heartbeatTable = table;
+            return this;
+        }
+
+        /**
+         * How often the lag is measured; also the resolution of the measurement.
+         */
+        public Builder heartbeatInterval(Duration interval) {
+            this.heartbeatInterval = interval;
+            return this;
+        }
+
+        /**
+         * Largest replica lag at which polls still go to the replica.
+         */
+        public Builder lagBudget(Duration budget) {
+            this.lagBudget = budget;
+            return this;
+        }
+
+        /**
+         * Polls in this last stretch before a wait's deadline always go to the primary.
+         */
+        public Builder escalateBefore(Duration beforeDeadline) {
+            this.escalateBefore = beforeDeadline;
+            return this;
+        }
+
+        /**
+         * Starts the heartbeat; polls go to the primary until the first lag measurement.
+         */
+        public ReplicaRouter start() {
+            return new ReplicaRouter(this);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalesces identical in-flight database waits (same data source, SQL, bind parameters and predicate).
+ * The first waiter starts the poll, later waiters subscribe to it, and every subscriber gets the same result.
+ * A subscriber whose own timeout outlasts the shared poll starts (or joins) a new one for the time it has left.
+ * <p>
+ * With {@link #await} the first waiter polls on its own thread, so the shared poll never outlives the waiter whose
+ * connection it uses. With {@link #join} the poll runs on {@link AsyncDbWait}, and must either lease its own
+ * connections or carry the connection it polls on in its {@link WaitKey}.
+ */
+public final class SingleFlightWait {
+
+    private static final ConcurrentMap<WaitKey, CompletableFuture<Boolean>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private SingleFlightWait() {
+    }
+
+    /**
+     * Joins the in-flight wait for {@code key}, or starts one with {@code pollFactory}.
+     *
+     * @param key          identity of the wait
+     * @param timeout      how long this subscriber is willing to wait
+     * @param pollFactory  starts a non-blocking poll for the given remaining time (e.g. via {@link AsyncDbWait})
+     * @return future completing with true when the condition was met, false on timeout
+     */
+    public static CompletableFuture<Boolean> join(WaitKey key, Duration timeout,
+                                                  Function<Duration, CompletableFuture<Boolean>> pollFactory) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        joinUntil(key, System.currentTimeMillis() + timeout.toMillis(), pollFactory).whenComplete((found, error) -> {
+            if (error != null) {
+                // Subscribers see the poll's own failure (e.g. TerminalStateException), not the chaining wrapper
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                result.complete(found);
+            }
+        });
+
+        // A shared poll started by a longer waiter may outlive this subscriber's own timeout
+        ScheduledFuture<?> timeoutTask = AsyncDbWait.scheduler()
+                .schedule(() -> result.complete(false), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((found, error) -> timeoutTask.cancel(false));
+        return result;
+    }
+
+    /**
+     * Blocking counterpart of {@link #join}. If no identical wait is in flight, {@code poll} runs on the calling
+     * thread and its result is handed to every waiter that joined meanwhile; otherwise this waiter blocks on that
+     * result. Only a {@link TerminalStateException} is passed on to the other waiters: if the poll fails in any
+     * other way they start their own.
+     *
+     * @param poll  polls on the calling thread for the given remaining time; true when the condition was met
+     * @return true when the condition was met, false on timeout
+     */
+    public static boolean await(WaitKey key, Duration timeout, BlockingPoll poll) {
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        while (true) {
+            long remaining = deadlineMillis - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            CompletableFuture<Boolean> placeholder = new CompletableFuture<>();
+            CompletableFuture<Boolean> shared = IN_FLIGHT.putIfAbsent(key, placeholder);
+            if (shared == null) {
+                return lead(key, placeholder, Duration.ofMillis(remaining), poll);
+            }
+            try {
+                if (shared.get(remaining, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                // The shared poll ran out of its own time; keep going on this waiter's budget
+            } catch (TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Coalesced database wait interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Number of distinct polls currently running; handy for asserting that waits were coalesced.
+     */
+    public static int inFlightCount() {
+        return IN_FLIGHT.size();
+    }
+
+    private static boolean lead(WaitKey key, CompletableFuture<Boolean> placeholder, Duration timeout, BlockingPoll poll) {
+        boolean found = false;
+        TerminalStateException terminal = null;
+        try {
+            found = poll.poll(timeout);
+            return found;
+        } catch (TerminalStateException e) {
+            terminal = e;
+            throw e;
+        } finally {
+            // Removed first, so waiters that retry start a new poll rather than finding this one
+            IN_FLIGHT.remove(key, placeholder);
+            if (terminal != null) {
+                placeholder.completeExceptionally(terminal);
+            } else {
+                // Also false if the poll failed, e.g. was interrupted, so that the waiters poll for themselves
+                placeholder.complete(found);
+            }
+        }
+    }
+
+    private static CompletableFuture<Boolean> joinUntil(WaitKey key, long deadlineMillis,
+                                                        Function<Duration, CompletableFuture<Boolean>> pollFactory) {
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        CompletableFuture<Boolean> placeholder = new CompletableFuture<>();
+        CompletableFuture<Boolean> shared = IN_FLIGHT.putIfAbsent(key, placeholder);
+        if (shared == null) {
+            shared = placeholder;
+            startPoll(key, placeholder, Duration.ofMillis(remaining), pollFactory);
+        }
+
+        // A false result only means the shared poll ran out of time; keep going on this subscriber's budget
+        return shared.thenCompose(found -> found
+                ? CompletableFuture.completedFuture(true)
+                : joinUntil(key, deadlineMillis, pollFactory));
+    }
+
+    private static void startPoll(WaitKey key, CompletableFuture<Boolean> placeholder, Duration timeout,
+                                  Function<Duration, CompletableFuture<Boolean>> pollFactory) {
+        CompletableFuture<Boolean> poll;
+        try {
+            poll = pollFactory.apply(timeout);
+        } catch (RuntimeException e) {
+            IN_FLIGHT.remove(key, placeholder);
+            placeholder.completeExceptionally(e);
+            return;
+        }
+        poll.whenComplete((found, error) -> {
+            IN_FLIGHT.remove(key, placeholder);
+            if (error != null) {
+                placeholder.completeExceptionally(error);
+            } else {
+                placeholder.complete(found);
+            }
+        });
+    }
+
+    /**
+     * Polls on the calling thread; see {@link #await}.
+     */
+    @FunctionalInterface
+    public interface BlockingPoll {
+        boolean poll(Duration timeout);
+    }
+
+    /**
+     * Identity of a wait: data source, SQL text, bind parameters and a description of the predicate, plus the
+     * connection the poll runs on when it is not the poll's own.
+     */
+    public static final class WaitKey {
+
+        private final String dataSource;
+        private final Object connection;
+        private final String sql;
+        private final List<Object> params;
+        private final String predicate;
+
+        public WaitKey(String dataSource, String sql, List<?> params, String predicate) {
+            this(dataSource, null, sql, params, predicate);
+        }
+
+        /**
+         * Key for a non-blocking poll on a caller's {@code connection}: it is only shared by waits on that same
+         * connection, never run on a connection another caller may close.
+         */
+        public WaitKey(String dataSource, Object connection, String sql, List<?> params, String predicate) {
+            this.dataSource = dataSource;
+            this.connection = connection;
+            this.sql = sql;
+            this.params = Collections.unmodifiableList(new ArrayList<Object>(params));
+            this.predicate = predicate;
+        }
+
+        public String dataSource() {
+            return dataSource;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WaitKey)) {
+                return false;
+            }
+            WaitKey other = (WaitKey) o;
+            return dataSource.equals(other.dataSource)
+                    && connection == other.connection
+                    && sql.equals(other.sql)
+                    && params.equals(other.params)
+                    && predicate.equals(other.predicate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataSource, System.identityHashCode(connection), sql, params, predicate);
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + params + " [" + predicate + "] @ " + dataSource;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Expected state of one status column, with the states that mean it will never get there. A wait on a
+ * {@code StateExpectation} succeeds on any success value and gives up at once, with a
+ * {@link TerminalStateException} carrying the observed value, on any failure value; anything else keeps it polling.
+ * <pre>
+ * StateExpectation onboarded = StateExpectation.of("CLNT_STAT", "ONBOARDED", "FAILED", "REJECTED");
+ * DbWaitUtil.waitForRecord(conn, SELECT_CLNT_DTL_SQL, clientId, onboarded, pollStrategy);
+ * </pre>
+ */
+public final class StateExpectation {
+
+    public enum State {
+        SUCCEEDED,
+        FAILED,
+        PENDING
+    }
+
+    private final String column;
+    private final Set<String> successValues;
+    private final Set<String> failureValues;
+    private final boolean ignoreCase;
+
+    private StateExpectation(String column, Collection<String> successValues, Collection<String> failureValues,
+                             boolean ignoreCase) {
+        this.column = WaitExpectation.requireIdentifier(column);
+        this.successValues = Collections.unmodifiableSet(new LinkedHashSet<>(successValues));
+        this.failureValues = Collections.unmodifiableSet(new LinkedHashSet<>(failureValues));
+        this.ignoreCase = ignoreCase;
+        if (this.successValues.isEmpty()) {
+            throw new IllegalArgumentException("No success value for " + column);
+        }
+        for (String failure : this.failureValues) {
+            if (contains(this.successValues, failure)) {
+                throw new IllegalArgumentException(column + " value " + failure + " is both a success and a failure");
+            }
+        }
+    }
+
+    public static StateExpectation of(String column, Collection<String> successValues, Collection<String> failureValues) {
+        return new StateExpectation(column, successValues, failureValues, false);
+    }
+
+    /**
+     * One success value and any number of terminal failure values.
+     */
+    public static StateExpectation of(String column, String successValue, String... failureValues) {
+        return of(column, Collections.singletonList(successValue), Arrays.asList(failureValues));
+    }
+
+    /**
+     * Same expectation, comparing values without regard to case.
+     */
+    public StateExpectation ignoringCase() {
+        return new StateExpectation(column, successValues, failureValues, true);
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public Set<String> successValues() {
+        return successValues;
+    }
+
+    public Set<String> failureValues() {
+        return failureValues;
+    }
+
+    public State classify(String actual) {
+        if (actual == null) {
+            return State.PENDING;
+        }
+        if (contains(successValues, actual)) {
+            return State.SUCCEEDED;
+        }
+        return contains(failureValues, actual) ? State.FAILED : State.PENDING;
+    }
+
+    /**
+     * Poll check for the value just read from {@code table} for {@code key}.
+     *
+     * @return true on a success value, false while the state is still pending
+     * @throws TerminalStateException on a failure value
+     */
+    public boolean reached(String table, String key, String actual) {
+        switch (classify(actual)) {
+            case SUCCEEDED:
+                return true;
+            case FAILED:
+                throw new TerminalStateException(table, key, column, actual, successValues.toString());
+            default:
+                return false;
+        }
+    }
+
+    private boolean contains(Set<String> values, String actual) {
+        if (!ignoreCase) {
+            return values.contains(actual);
+        }
+        for (String value : values) {
+            if (value.equalsIgnoreCase(actual)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identity of the expectation for coalescing waits.
+     */
+    String canonical() {
+        String canonical = column.toUpperCase(Locale.ROOT) + " IN " + successValues + " FAILS ON " + failureValues;
+        return ignoreCase ? canonical.toUpperCase(Locale.ROOT) + " IGNORE CASE" : canonical;
+    }
+
+    @Override
+    public String toString() {
+        return column + " IN " + successValues + (failureValues.isEmpty() ? "" : ", failing on " + failureValues);
+    }
+}
@@ -0,0 +1,363 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a validation query without leaking cursors: the statement uses a bounded fetch size, captured column
+ * indexes are resolved once, row checks are applied while rows stream, and the statement and ResultSet are
+ * closed before an immutable {@link Result} is returned.
+ * <pre>
+ * StreamingRowValidator validator = StreamingRowValidator.builder(SELECT_CLNT_ENCRYPT_DTL_SQL)
+ *         .capture("CLNT_ID", "KEY_TYPE")
+ *         .expect(WaitExpectation.equalTo("CLNT_ID", clientId))
+ *         .build();
+ * StreamingRowValidator.Result result = validator.await(conn, Duration.ofSeconds(30), pollStrategy, clientId);
+ * </pre>
+ */
+public final class StreamingRowValidator {
+
+    private static final int DEFAULT_FETCH_SIZE = 50;
+
+    private final String sql;
+    private final List<String> capturedColumns;
+    private final List<WaitExpectation> expectations;
+    private final Map<String, Set<String>> failureValues;
+    private final boolean[] onFailureColumn;
+    private final int fetchSize;
+    private final boolean pushDown;
+    private volatile String compiledSql;
+    private volatile int[] capturedIndexes;
+    private volatile int[] expectationIndexes;
+    private volatile int[] failureIndexes;
+
+    private StreamingRowValidator(Builder builder) {
+        this.sql = builder.sql;
+        this.capturedColumns = Collections.unmodifiableList(new ArrayList<>(builder.capturedColumns));
+        this.expectations = Collections.unmodifiableList(new ArrayList<>(builder.expectations));
+        this.failureValues = Collections.unmodifiableMap(new LinkedHashMap<>(builder.failureValues));
+        this.onFailureColumn = new boolean[expectations.size()];
+        for (int i = 0; i < onFailureColumn.length; i++) {
+            for (String column : failureValues.keySet()) {
+                onFailureColumn[i] |= column.equalsIgnoreCase(expectations.get(i).column());
+            }
+        }
+        this.fetchSize = builder.fetchSize;
+        // Rows in a failure state must come back to be recognised, so they cannot be filtered out by the database
+        this.pushDown = builder.pushDown && failureValues.isEmpty();
+    }
+
+    /**
+     * Tables isolated for the calling worker with {@link WorkerNamespace#isolateTable} are replaced in {@code sql}
+     * by the worker's copy, so build validators on the test thread.
+     */
+    public static Builder builder(String sql) {
+        return new Builder(WorkerNamespace.rewrite(sql));
+    }
+
+    /**
+     * Runs the query once and returns the first row that satisfies every expectation.
+     *
+     * @param params bind parameters of the original query, in order
+     * @throws TerminalStateException if a row holds one of the {@link Builder#failOn failure values}
+     */
+    public Result validate(Connection conn, Object... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(compiledSql(conn))) {
+            ps.setFetchSize(fetchSize);
+            int index = 1;
+            for (Object param : params) {
+                ps.setObject(index++, param);
+            }
+            if (pushDown) {
+                WaitExpectation.bindAll(ps, index, expectations);
+            }
+
+            // Only recorded events need the key, so it is not built on every poll
+            Supplier<String> key = () -> keyOf(params);
+            try (ResultSet rs = WaitEvents.executeQuery(ps, sql, key)) {
+                WaitEvents.Fetch fetch = WaitEvents.beginFetch();
+                Result result = null;
+                String outcome = WaitEvents.ERROR;
+                try {
+                    result = scan(rs, params);
+                    outcome = result.matched() ? WaitEvents.MATCHED : WaitEvents.PENDING;
+                    return result;
+                } catch (TerminalStateException e) {
+                    outcome = WaitEvents.TERMINAL_STATE;
+                    throw e;
+                } finally {
+                    fetch.finish(sql, key, result == null ? 0 : result.rowsScanned(), outcome);
+                }
+            }
+        }
+    }
+
+    private Result scan(ResultSet rs, Object[] params) throws SQLException {
+        int rowsScanned = 0;
+        while (rs.next()) {
+            rowsScanned++;
+            resolveIndexes(rs);
+            if (pushDown) {
+                return Result.matched(captureRow(rs), rowsScanned);
+            }
+            // Another entity's row, or a history row, says nothing about this one even if it failed
+            if (!matchesExpectations(rs, false)) {
+                continue;
+            }
+            checkFailureStates(rs, params);
+            if (matchesExpectations(rs, true)) {
+                return Result.matched(captureRow(rs), rowsScanned);
+            }
+        }
+        return Result.notMatched(rowsScanned);
+    }
+
+    /**
+     * Polls {@link #validate} until a row matches or {@code timeout} elapses. Each poll goes through
+     * {@link DbLoadGovernor} and is recorded as a {@link WaitEvents.Poll} event.
+     *
+     * @throws SQLException with a "Timeout" message if nothing matched in time
+     * @throws TerminalStateException as soon as a row holds a failure value
+     */
+    public Result await(Connection conn, Duration timeout, PollStrategy pollStrategy, Object... params)
+            throws SQLException, InterruptedException {
+        String dataSource = DbLoadGovernor.dataSourceOf(conn);
+        WaitMetrics.Wait metrics = WaitMetrics.begin(sql).on(dataSource);
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeout.toMillis();
+        int attempt = 0;
+
+        String key = keyOf(params);
+
+        while (true) {
+            long queryStart = metrics.startQuery();
+            WaitEvents.Poll poll = WaitEvents.beginPoll(sql, key);
+            Result result;
+            try {
+                DbLoadGovernor.Permit permit = DbLoadGovernor.acquire(dataSource, deadline);
+                try {
+                    result = validate(conn, params);
+                } finally {
+                    permit.close();
+                }
+            } catch (TimeoutException e) {
+                // Still queued for a permit at the deadline: no poll was made, and the wait is over
+                poll.finish(WaitEvents.TIMEOUT);
+                metrics.finish(false);
+                throw new SQLException("Timeout: Entry not found in database after waiting for " + timeout.toMillis()
+                        + "ms", e);
+            } catch (TerminalStateException e) {
+                poll.finish(WaitEvents.TERMINAL_STATE);
+                metrics.endQuery(queryStart);
+                metrics.failed();
+                throw e;
+            } catch (SQLException | InterruptedException | RuntimeException e) {
+                poll.finish(WaitEvents.ERROR);
+                throw e;
+            }
+            poll.finish(result.matched() ? WaitEvents.MATCHED : WaitEvents.PENDING);
+            metrics.endQuery(queryStart);
+            if (result.matched()) {
+                metrics.finish(true);
+                return result;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                metrics.finish(false);
+                throw new SQLException("Timeout: Entry not found in database after waiting for " + timeout.toMillis() + "ms");
+            }
+            pollStrategy.sleepBeforeNextPoll(++attempt, deadline);
+        }
+    }
+
+    private String compiledSql(Connection conn) throws SQLException {
+        String compiled = compiledSql;
+        if (compiled == null) {
+            compiled = pushDown
+                    ? WaitExpectation.RowLimit.forConnection(conn).apply(WaitExpectation.filterQuery(sql, expectations))
+                    : sql;
+            compiledSql = compiled;
+        }
+        return compiled;
+    }
+
+    private void resolveIndexes(ResultSet rs) throws SQLException {
+        if (capturedIndexes != null) {
+            return;
+        }
+        int[] expectationIdx = new int[expectations.size()];
+        for (int i = 0; i < expectationIdx.length; i++) {
+            expectationIdx[i] = rs.findColumn(expectations.get(i).column());
+        }
+        int[] failureIdx = new int[failureValues.size()];
+        int next = 0;
+        for (String column : failureValues.keySet()) {
+            failureIdx[next++] = rs.findColumn(column);
+        }
+        int[] capturedIdx = new int[capturedColumns.size()];
+        for (int i = 0; i < capturedIdx.length; i++) {
+            capturedIdx[i] = rs.findColumn(capturedColumns.get(i));
+        }
+        expectationIndexes = expectationIdx;
+        failureIndexes = failureIdx;
+        capturedIndexes = capturedIdx;
+    }
+
+    private void checkFailureStates(ResultSet rs, Object[] params) throws SQLException {
+        int i = 0;
+        for (Map.Entry<String, Set<String>> failure : failureValues.entrySet()) {
+            String actual = rs.getString(failureIndexes[i++]);
+            if (actual != null && failure.getValue().contains(actual)) {
+                throw new TerminalStateException(WaitMetrics.tableOf(sql), keyOf(params),
+                        failure.getKey(), actual, expectations.toString());
+            }
+        }
+    }
+
+    private static String keyOf(Object[] params) {
+        return params.length == 1 ? String.valueOf(params[0]) : Arrays.toString(params);
+    }
+
+    /**
+     * @param failureColumns  whether to check the expectations on {@link Builder#failOn} columns (the state), or
+     *                        only the others (which identify the entity)
+     */
+    private boolean matchesExpectations(ResultSet rs, boolean failureColumns) throws SQLException {
+        for (int i = 0; i < expectations.size(); i++) {
+            if (onFailureColumn[i] == failureColumns
+                    && !expectations.get(i).matches(rs.getString(expectationIndexes[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, String> captureRow(ResultSet rs) throws SQLException {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < capturedColumns.size(); i++) {
+            row.put(capturedColumns.get(i), rs.getString(capturedIndexes[i]));
+        }
+        return Collections.unmodifiableMap(row);
+    }
+
+    public static final class Builder {
+
+        private final String sql;
+        private final List<String> capturedColumns = new ArrayList<>();
+        private final List<WaitExpectation> expectations = new ArrayList<>();
+        private final Map<String, Set<String>> failureValues = new LinkedHashMap<>();
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+        private boolean pushDown = true;
+
+        private Builder(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * Columns copied into the {@link Result} of the matching row.
+         */
+        public Builder capture(String... columns) {
+            capturedColumns.addAll(Arrays.asList(columns));
+            return this;
+        }
+
+        /**
+         * Row check; a row matches when every expectation holds.
+         */
+        public Builder expect(WaitExpectation expectation) {
+            expectations.add(expectation);
+            return this;
+        }
+
+        /**
+         * Terminal failure states: a row whose {@code column} holds one of {@code values} ends the validation with
+         * a {@link TerminalStateException} instead of being skipped. Only rows that meet every expectation on other
+         * columns count, so expect the entity's key (e.g. CLNT_ID) for rows of other entities or older history rows
+         * to be passed over. Turns off {@link #pushDown}.
+         */
+        public Builder failOn(String column, String... values) {
+            failureValues.computeIfAbsent(WaitExpectation.requireIdentifier(column), k -> new HashSet<>())
+                    .addAll(Arrays.asList(values));
+            return this;
+        }
+
+        public Builder fetchSize(int rows) {
+            if (rows < 1) {
+                throw new IllegalArgumentException("fetchSize must be at least 1");
+            }
+            this.fetchSize = rows;
+            return this;
+        }
+
+        /**
+         * When true (the default) the expectations are evaluated by the database and at most one row is fetched;
+         * when false every row is streamed and checked in Java, stopping at the first match.
+         */
+        public Builder pushDown(boolean pushDown) {
+            this.pushDown = pushDown;
+            return this;
+        }
+
+        public StreamingRowValidator build() {
+            return new StreamingRowValidator(this);
+        }
+    }
+
+    /**
+     * Outcome of one validation run; holds no JDBC resources.
+     */
+    public static final class Result {
+
+        private final boolean matched;
+        private final Map<String, String> row;
+        private final int rowsScanned;
+
+        private Result(boolean matched, Map<String, String> row, int rowsScanned) {
+            this.matched = matched;
+            this.row = row;
+            this.rowsScanned = rowsScanned;
+        }
+
+        static Result matched(Map<String, String> row, int rowsScanned) {
+            return new Result(true, row, rowsScanned);
+        }
+
+        static Result notMatched(int rowsScanned) {
+            return new Result(false, Collections.<String, String>emptyMap(), rowsScanned);
+        }
+
+        public boolean matched() {
+            return matched;
+        }
+
+        /**
+         * Captured value of {@code column} from the matching row.
+         */
+        public String value(String column) {
+            if (!row.containsKey(column)) {
+                throw new IllegalArgumentException("Column was not captured: " + column);
+            }
+            return row.get(column);
+        }
+
+        public Map<String, String> row() {
+            return row;
+        }
+
+        public int rowsScanned() {
+            return rowsScanned;
+        }
+    }
+}
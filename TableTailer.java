@@ -0,0 +1,239 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves every waiter on one table from a single incremental query. The tailer keeps a high-water mark on a
+ * monotonically increasing column (a last-updated timestamp or an id) and each tick reads only the rows changed
+ * since, i.e. {@code SELECT * FROM table WHERE mark >= ? ORDER BY mark}. Changed rows are matched against the
+ * waiters registered for their key, and their keys are published to {@link ChangeNotificationHub} so ordinary
+ * polling waits wake up as well. Database cost follows the table's rate of change, not the number of waiters.
+ * <pre>
+ * try (TableTailer tailer = new TableTailer(conn, "CLIENT_DETAILS", "CLNT_ID", "LAST_UPDT_TS", Duration.ofMillis(200))) {
+ *     CompletableFuture&lt;Boolean&gt; onboarded = tailer.waitFor(clientId, Duration.ofSeconds(30),
+ *             WaitExpectation.equalTo("CLNT_STAT", "ONBOARDED"));
+ * }
+ * </pre>
+ * Rows committed with a mark older than one already read (a long transaction stamped at its start) are not seen
+ * by the tail; each waiter is therefore also checked once with a keyed query when it registers.
+ */
+public class TableTailer implements AutoCloseable {
+
+    private final Connection conn;
+    private final String table;
+    private final String keyColumn;
+    private final String markColumn;
+    private final String allRowsSql;
+    private final String changedSinceSql;
+    private final String keyedSql;
+    private final String dataSource;
+    private final long tickMillis;
+    private final ConcurrentMap<String, List<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final Object connLock = new Object();
+    private final ScheduledFuture<?> task;
+    private Object highWaterMark; // guarded by connLock
+    private final Set<String> rowsAtMark = new HashSet<>(); // guarded by connLock
+
+    /**
+     * Starts tailing {@code table} from its current high-water mark.
+     *
+     * @param conn          dedicated connection, owned (and closed) by the tailer
+     * @param keyColumn     column waiters are keyed by (e.g. CLNT_ID)
+     * @param markColumn    indexed column that increases on every insert and update
+     * @param tickInterval  how often changed rows are read
+     */
+    public TableTailer(Connection conn, String table, String keyColumn, String markColumn, Duration tickInterval)
+            throws SQLException {
+        this.conn = conn;
+        this.table = WaitExpectation.requireTableName(table);
+        this.keyColumn = WaitExpectation.requireIdentifier(keyColumn);
+        this.markColumn = WaitExpectation.requireIdentifier(markColumn);
+        this.allRowsSql = "SELECT * FROM " + table + " ORDER BY " + markColumn;
+        this.changedSinceSql = "SELECT * FROM " + table + " WHERE " + markColumn + " >= ? ORDER BY " + markColumn;
+        this.keyedSql = "SELECT * FROM " + table + " WHERE " + keyColumn + " = ?";
+        this.dataSource = DbLoadGovernor.dataSourceOf(conn);
+        this.tickMillis = tickInterval.toMillis();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(" + markColumn + ") FROM " + table)) {
+            rs.next();
+            highWaterMark = rs.getObject(1);
+        }
+        ChangeNotificationHub.sourceStarted();
+        task = AsyncDbWait.scheduleBlocking(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Completes with true once a row for {@code key} satisfies every expectation, false after {@code timeout}.
+     */
+    public CompletableFuture<Boolean> waitFor(String key, Duration timeout, WaitExpectation... expectations) {
+        Waiter waiter = new Waiter(key, Arrays.asList(expectations));
+        waiters.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(waiter);
+        waiter.result.whenComplete((found, error) -> removeWaiter(waiter));
+
+        ScheduledFuture<?> timer = AsyncDbWait.scheduler().schedule(() -> waiter.result.complete(false),
+                timeout.toMillis(), TimeUnit.MILLISECONDS);
+        waiter.result.whenComplete((found, error) -> timer.cancel(false));
+
+        // Catches rows that were already there, or committed behind the mark
+        long deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        // Queued for a permit without a thread; cancelled if the waiter is done before it is granted
+        CompletableFuture<DbLoadGovernor.Permit> permit = DbLoadGovernor.acquireAsync(dataSource, deadlineMillis);
+        waiter.result.whenComplete((found, error) -> permit.cancel(false));
+        permit.thenAccept(granted -> AsyncDbWait.checkExecutor().execute(() -> {
+            try {
+                checkExisting(waiter);
+            } finally {
+                granted.close();
+            }
+        }));
+        return waiter.result;
+    }
+
+    /**
+     * Number of registered waiters still pending.
+     */
+    public int waiterCount() {
+        int count = 0;
+        for (List<Waiter> keyWaiters : waiters.values()) {
+            count += keyWaiters.size();
+        }
+        return count;
+    }
+
+    private void tick() {
+        // Rather than queue behind the waits the governor is holding back, skip a tick; the next one reads from the
+        // same mark
+        DbLoadGovernor.Permit permit = DbLoadGovernor.tryAcquire(dataSource);
+        if (permit == null) {
+            return;
+        }
+        synchronized (connLock) {
+            // Until the table has a mark (it was empty at start) every row is new
+            try (PreparedStatement ps = conn.prepareStatement(highWaterMark == null ? allRowsSql : changedSinceSql)) {
+                if (highWaterMark != null) {
+                    ps.setObject(1, highWaterMark);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int markIndex = rs.findColumn(markColumn);
+                    while (rs.next()) {
+                        Object mark = rs.getObject(markIndex);
+                        Map<String, String> row = rowOf(rs, meta);
+                        // ">=" re-reads rows sharing the current mark; skip those already dispatched unchanged
+                        String rowId = row.toString();
+                        if (mark != null && !mark.equals(highWaterMark)) {
+                            highWaterMark = mark;
+                            rowsAtMark.clear();
+                        }
+                        if (rowsAtMark.add(rowId)) {
+                            dispatch(row.get(keyColumn.toUpperCase(Locale.ROOT)), row);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                // The next tick retries from the same mark
+                System.err.println("Tail of " + table + " failed: " + e.getMessage());
+            } finally {
+                permit.close();
+            }
+        }
+    }
+
+    private void checkExisting(Waiter waiter) {
+        synchronized (connLock) {
+            try (PreparedStatement ps = conn.prepareStatement(keyedSql)) {
+                ps.setString(1, waiter.key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    while (rs.next() && !waiter.result.isDone()) {
+                        waiter.offer(rowOf(rs, meta));
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Keyed check on " + table + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(String key, Map<String, String> row) {
+        if (key == null) {
+            return;
+        }
+        List<Waiter> keyWaiters = waiters.get(key);
+        if (keyWaiters != null) {
+            for (Waiter waiter : keyWaiters) {
+                waiter.offer(row);
+            }
+        }
+        ChangeNotificationHub.publish(table, key);
+    }
+
+    private void removeWaiter(Waiter waiter) {
+        waiters.computeIfPresent(waiter.key, (k, keyWaiters) -> {
+            keyWaiters.remove(waiter);
+            return keyWaiters.isEmpty() ? null : keyWaiters;
+        });
+    }
+
+    private static Map<String, String> rowOf(ResultSet rs, ResultSetMetaData meta) throws SQLException {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            row.put(meta.getColumnLabel(i).toUpperCase(Locale.ROOT), rs.getString(i));
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        task.cancel(false);
+        ChangeNotificationHub.sourceStopped();
+        for (List<Waiter> keyWaiters : waiters.values()) {
+            for (Waiter waiter : keyWaiters) {
+                waiter.result.complete(false);
+            }
+        }
+        synchronized (connLock) {
+            conn.close();
+        }
+    }
+
+    private static final class Waiter {
+
+        private final String key;
+        private final List<WaitExpectation> expectations;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Waiter(String key, List<WaitExpectation> expectations) {
+            this.key = key;
+            this.expectations = expectations;
+        }
+
+        private void offer(Map<String, String> row) {
+            for (WaitExpectation expectation : expectations) {
+                if (!expectation.matches(row.get(expectation.column().toUpperCase(Locale.ROOT)))) {
+                    return;
+                }
+            }
+            result.complete(true);
+        }
+    }
+}
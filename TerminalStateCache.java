@@ -0,0 +1,203 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache, with a time-to-live, of entity states that never change once reached, e.g. CLNT_STAT
+ * ONBOARDED or an order's PROCESSED status. Waits consult it first, so validating the same entity again answers
+ * immediately instead of polling.
+ * <pre>
+ * TerminalStateCache.registerTerminal("CLIENT_DETAILS", "CLNT_STAT", "ONBOARDED");
+ * </pre>
+ * Entries are keyed by table, key column, key value and column, so a wait by CLNT_ID and a wait by, say, ACCT_ID that
+ * happen to bind the same value are different entities. {@link #keyColumnOf} finds the key column of a wait's query.
+ * Only registered values are cached. Tests that change an entity after it reached a terminal state must call
+ * {@link #invalidate(String, String)} (or {@link #invalidateTable}); {@link DbFixture} drops the entries of its tables
+ * when it restores the database.
+ */
+public final class TerminalStateCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+
+    private static final Pattern KEY_COLUMN_PATTERN =
+            Pattern.compile("\\bWHERE\\b.*?(?:\\w+\\.)?(\\w+)\\s*=\\s*\\?", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Map<String, Set<String>> TERMINAL_VALUES = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static int maxEntries = DEFAULT_MAX_ENTRIES; // guarded by ENTRIES
+    private static long ttlMillis = DEFAULT_TTL.toMillis(); // guarded by ENTRIES
+    private static final LinkedHashMap<String, CachedState> ENTRIES = new LinkedHashMap<String, CachedState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedState> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private TerminalStateCache() {
+    }
+
+    /**
+     * Declares {@code values} of {@code table.column} as terminal; matching is case-sensitive.
+     */
+    public static void registerTerminal(String table, String column, String... values) {
+        Set<String> terminal = TERMINAL_VALUES.computeIfAbsent(columnKey(table, column), k -> ConcurrentHashMap.newKeySet());
+        for (String value : values) {
+            terminal.add(value);
+        }
+    }
+
+    /**
+     * Changes the bounds; existing entries keep their expiry time.
+     */
+    public static void configure(int maxEntries, Duration ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        synchronized (ENTRIES) {
+            TerminalStateCache.maxEntries = maxEntries;
+            TerminalStateCache.ttlMillis = ttl.toMillis();
+            Iterator<String> it = ENTRIES.keySet().iterator();
+            while (ENTRIES.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the terminal value recorded for the entity, or null if none is known
+     */
+    public static String lookup(String table, String keyColumn, String key, String column) {
+        String entryKey = entryKey(table, keyColumn, key, column);
+        synchronized (ENTRIES) {
+            CachedState entry = ENTRIES.get(entryKey);
+            if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+                HITS.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                ENTRIES.remove(entryKey);
+            }
+        }
+        MISSES.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Records an observed value; ignored unless it is registered as terminal for {@code table.column}.
+     *
+     * @return true if the value was cached
+     */
+    public static boolean remember(String table, String keyColumn, String key, String column, String value) {
+        Set<String> terminal = TERMINAL_VALUES.get(columnKey(table, column));
+        if (value == null || terminal == null || !terminal.contains(value)) {
+            return false;
+        }
+        synchronized (ENTRIES) {
+            ENTRIES.put(entryKey(table, keyColumn, key, column), new CachedState(value, System.currentTimeMillis() + ttlMillis));
+        }
+        return true;
+    }
+
+    /**
+     * Registered terminal value equal to {@code value} ignoring case, or null.
+     */
+    static String terminalValueIgnoringCase(String table, String column, String value) {
+        Set<String> terminal = TERMINAL_VALUES.get(columnKey(table, column));
+        if (terminal != null && value != null) {
+            for (String candidate : terminal) {
+                if (candidate.equalsIgnoreCase(value)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Column the bind parameter of {@code sql} is compared to, e.g. CLNT_ID for
+     * {@code SELECT * FROM CLIENT_DETAILS WHERE CLNT_ID = ?}, upper-cased; if there is no such comparison, the
+     * query's whitespace-normalised text, so entries of queries keyed differently are never shared.
+     */
+    public static String keyColumnOf(String sql) {
+        Matcher matcher = KEY_COLUMN_PATTERN.matcher(sql);
+        return matcher.find() ? matcher.group(1).toUpperCase(Locale.ROOT) : PollHistory.shapeOf(sql);
+    }
+
+    /**
+     * Forgets every cached column of one entity, whatever query it was cached by. Call after a test changes it.
+     */
+    public static void invalidate(String table, String key) {
+        String prefix = entityKey(table, key);
+        synchronized (ENTRIES) {
+            ENTRIES.keySet().removeIf(entryKey -> entryKey.startsWith(prefix));
+        }
+    }
+
+    public static void invalidate(String table, String key, String column) {
+        String prefix = entityKey(table, key);
+        String suffix = '\u0000' + column.toUpperCase(Locale.ROOT);
+        synchronized (ENTRIES) {
+            ENTRIES.keySet().removeIf(entryKey -> entryKey.startsWith(prefix) && entryKey.endsWith(suffix));
+        }
+    }
+
+    /**
+     * Forgets every cached entity of {@code table}, leaving other tables' entries in place.
+     */
+    public static void invalidateTable(String table) {
+        String prefix = table.toUpperCase(Locale.ROOT) + '\u0000';
+        synchronized (ENTRIES) {
+            ENTRIES.keySet().removeIf(entryKey -> entryKey.startsWith(prefix));
+        }
+    }
+
+    public static void invalidateAll() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    public static long hits() {
+        return HITS.get();
+    }
+
+    public static long misses() {
+        return MISSES.get();
+    }
+
+    private static String columnKey(String table, String column) {
+        return table.toUpperCase(Locale.ROOT) + '\u0000' + column.toUpperCase(Locale.ROOT);
+    }
+
+    private static String entityKey(String table, String key) {
+        return table.toUpperCase(Locale.ROOT) + '\u0000' + key + '\u0000';
+    }
+
+    private static String entryKey(String table, String keyColumn, String key, String column) {
+        return entityKey(table, key) + keyColumn + '\u0000' + column.toUpperCase(Locale.ROOT);
+    }
+
+    private static final class CachedState {
+
+        private final String value;
+        private final long expiresAtMillis;
+
+        private CachedState(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
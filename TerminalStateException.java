@@ -0,0 +1,40 @@
+package org.example;
+
+/**
+ * Thrown when a waited-for entity reaches a state it can never leave, such as FAILED or REJECTED, so the wait
+ * ends immediately instead of running into its timeout. Carries the value that was observed.
+ */
+public class TerminalStateException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String table;
+    private final String key;
+    private final String column;
+    private final String observedValue;
+
+    public TerminalStateException(String table, String key, String column, String observedValue, String expected) {
+        super(table + " " + column + " for " + key + " reached terminal state " + observedValue
+                + " while waiting for " + expected);
+        this.table = table;
+        this.key = key;
+        this.column = column;
+        this.observedValue = observedValue;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public String observedValue() {
+        return observedValue;
+    }
+}
@@ -0,0 +1,260 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * JDK Flight Recorder events for the wait helpers, showing where a slow wait spends its time. Every poll is a
+ * {@code dbwait.Poll} event with its outcome. Inside it, {@code dbwait.ConnectionLease}, {@code dbwait.Execute} and
+ * {@code dbwait.Fetch} events cover the connection lease, statement execution and result fetch. Each event carries
+ * the SQL shape (the parameterised query) and the key. Time in a poll outside these three is spent queueing for a
+ * {@link DbLoadGovernor} permit, and the gaps between polls are the poll strategy's sleeps.
+ * <pre>
+ * mvn test -DargLine="-XX:StartFlightRecording=filename=target/waits.jfr"
+ * jfr print --events dbwait.Poll,dbwait.Execute target/waits.jfr   # or open the file in JDK Mission Control
+ * </pre>
+ * With no recording running, {@code begin}, {@code end} and {@code shouldCommit} cost a few nanoseconds, the
+ * event objects are optimised away, and fields are only filled in for events that will be committed.
+ * Needs JDK 11+, or JDK 8u262+.
+ */
+public final class WaitEvents {
+
+    public static final String MATCHED = "MATCHED";
+    public static final String PENDING = "PENDING";
+    public static final String TERMINAL_STATE = "TERMINAL_STATE";
+    public static final String ERROR = "ERROR";
+    public static final String LEASED = "LEASED";
+    public static final String TIMEOUT = "TIMEOUT";
+    public static final String EXECUTED = "EXECUTED";
+
+    // Key of an event that covers several keys, e.g. a batched IN query
+    public static final String NO_KEY = null;
+
+    // Poll being recorded on this thread, so leases inside it can be attributed; only set while recording
+    private static final ThreadLocal<Poll> CURRENT_POLL = new ThreadLocal<>();
+
+    private WaitEvents() {
+    }
+
+    /**
+     * Starts a poll; pass the result to {@link Poll#finish(String)} on every path.
+     */
+    public static Poll beginPoll(String sql, String key) {
+        Poll poll = new Poll();
+        if (poll.isEnabled()) {
+            poll.sql = sql;
+            poll.key = key;
+            poll.attributing = true;
+            CURRENT_POLL.set(poll);
+        }
+        poll.begin();
+        return poll;
+    }
+
+    /**
+     * Records each call of {@code check} as one poll: MATCHED or PENDING for a boolean result, TERMINAL_STATE or
+     * ERROR when it throws.
+     */
+    public static <T> Callable<T> traced(String sql, String key, Callable<T> check) {
+        return () -> {
+            Poll poll = beginPoll(sql, key);
+            String outcome = ERROR;
+            try {
+                T result = check.call();
+                outcome = Boolean.TRUE.equals(result) ? MATCHED : PENDING;
+                return result;
+            } catch (TerminalStateException e) {
+                outcome = TERMINAL_STATE;
+                throw e;
+            } finally {
+                poll.finish(outcome);
+            }
+        };
+    }
+
+    /**
+     * Runs {@code ps.executeQuery()} as a {@code dbwait.Execute} event.
+     */
+    public static ResultSet executeQuery(PreparedStatement ps, String sql, String key) throws SQLException {
+        return executeQuery(ps, sql, key, null);
+    }
+
+    /**
+     * Same as {@link #executeQuery(PreparedStatement, String, String)}, building the key only if the event is
+     * committed.
+     */
+    public static ResultSet executeQuery(PreparedStatement ps, String sql, Supplier<String> key) throws SQLException {
+        return executeQuery(ps, sql, null, key);
+    }
+
+    private static ResultSet executeQuery(PreparedStatement ps, String sql, String key, Supplier<String> lazyKey)
+            throws SQLException {
+        Execute execute = new Execute();
+        execute.begin();
+        String outcome = ERROR;
+        try {
+            ResultSet rs = ps.executeQuery();
+            outcome = EXECUTED;
+            return rs;
+        } finally {
+            execute.end();
+            if (execute.shouldCommit()) {
+                execute.sql = sql;
+                execute.key = lazyKey == null ? key : lazyKey.get();
+                execute.outcome = outcome;
+                execute.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts reading a result set; pass the rows read to {@link Fetch#finish} on every path.
+     */
+    public static Fetch beginFetch() {
+        Fetch fetch = new Fetch();
+        fetch.begin();
+        return fetch;
+    }
+
+    /**
+     * Starts a connection lease, attributed to the poll running on this thread if there is one.
+     */
+    public static ConnectionLease beginLease() {
+        ConnectionLease lease = new ConnectionLease();
+        lease.begin();
+        return lease;
+    }
+
+    @Name("dbwait.Poll")
+    @Label("DB Wait Poll")
+    @Category("DB Wait")
+    @Description("One check of a wait helper, including permit queueing, connection lease, execute and fetch")
+    @StackTrace(false)
+    public static final class Poll extends Event {
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Key")
+        String key;
+
+        @Label("Outcome")
+        String outcome;
+
+        private transient boolean attributing; // Not recorded
+
+        public void finish(String outcome) {
+            end();
+            if (attributing) {
+                CURRENT_POLL.remove();
+            }
+            if (shouldCommit()) {
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("dbwait.ConnectionLease")
+    @Label("DB Wait Connection Lease")
+    @Category("DB Wait")
+    @Description("Time to lease a pooled connection")
+    @StackTrace(false)
+    public static final class ConnectionLease extends Event {
+
+        @Label("Data Source")
+        String dataSource;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Key")
+        String key;
+
+        @Label("Outcome")
+        String outcome;
+
+        public void finish(String dataSource, String outcome) {
+            end();
+            if (shouldCommit()) {
+                Poll poll = CURRENT_POLL.get();
+                if (poll != null) {
+                    this.sql = poll.sql;
+                    this.key = poll.key;
+                }
+                this.dataSource = dataSource;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("dbwait.Execute")
+    @Label("DB Wait Execute")
+    @Category("DB Wait")
+    @Description("Statement execution, until the driver returns the result set")
+    @StackTrace(false)
+    public static final class Execute extends Event {
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Key")
+        String key;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("dbwait.Fetch")
+    @Label("DB Wait Fetch")
+    @Category("DB Wait")
+    @Description("Reading the rows of one poll's result set")
+    @StackTrace(false)
+    public static final class Fetch extends Event {
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Key")
+        String key;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Outcome")
+        String outcome;
+
+        public void finish(String sql, String key, long rows, String outcome) {
+            finish(sql, key, null, rows, outcome);
+        }
+
+        /**
+         * Same as {@link #finish(String, String, long, String)}, building the key only if the event is committed.
+         */
+        public void finish(String sql, Supplier<String> key, long rows, String outcome) {
+            finish(sql, null, key, rows, outcome);
+        }
+
+        private void finish(String sql, String key, Supplier<String> lazyKey, long rows, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.sql = sql;
+                this.key = lazyKey == null ? key : lazyKey.get();
+                this.rows = rows;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+}
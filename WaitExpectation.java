@@ -0,0 +1,229 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Structured expectation on one column (column, operator, value) that is evaluated by the database
+ * rather than by walking a ResultSet in Java. {@link #existsQuery} wraps a keyed query so every poll
+ * returns at most one row, e.g.
+ * <pre>
+ * SELECT 1 FROM (SELECT * FROM CLIENT_DETAILS WHERE CLNT_ID = ?) q
+ *  WHERE UPPER(q.CLNT_STAT) = UPPER(?) FETCH FIRST 1 ROWS ONLY
+ * </pre>
+ */
+public final class WaitExpectation {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*");
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*(\\.[A-Za-z_][A-Za-z0-9_$#]*)?");
+    private static final char LIKE_ESCAPE = '!';
+
+    public enum Operator {
+        EQUALS,
+        EQUALS_IGNORE_CASE,
+        NOT_EQUALS,
+        CONTAINS,
+        STARTS_WITH
+    }
+
+    private final String column;
+    private final Operator operator;
+    private final String value;
+
+    private WaitExpectation(String column, Operator operator, String value) {
+        this.column = requireIdentifier(column);
+        this.operator = operator;
+        this.value = value;
+    }
+
+    /**
+     * Rejects anything but a plain column name, so it can be spliced into SQL.
+     */
+    static String requireIdentifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not a plain column name: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * Same as {@link #requireIdentifier} for table names, which may be schema-qualified.
+     */
+    static String requireTableName(String name) {
+        if (name == null || !TABLE_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not a plain table name: " + name);
+        }
+        return name;
+    }
+
+    public static WaitExpectation of(String column, Operator operator, String value) {
+        return new WaitExpectation(column, operator, value);
+    }
+
+    public static WaitExpectation equalTo(String column, String value) {
+        return new WaitExpectation(column, Operator.EQUALS, value);
+    }
+
+    public static WaitExpectation equalToIgnoringCase(String column, String value) {
+        return new WaitExpectation(column, Operator.EQUALS_IGNORE_CASE, value);
+    }
+
+    public static WaitExpectation contains(String column, String value) {
+        return new WaitExpectation(column, Operator.CONTAINS, value);
+    }
+
+    public String column() {
+        return column;
+    }
+
+    public Operator operator() {
+        return operator;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * Same check in Java, for values that were already fetched.
+     */
+    public boolean matches(String actual) {
+        if (actual == null) {
+            return false;
+        }
+        switch (operator) {
+            case EQUALS:
+                return actual.equals(value);
+            case EQUALS_IGNORE_CASE:
+                return actual.equalsIgnoreCase(value);
+            case NOT_EQUALS:
+                return !actual.equals(value);
+            case CONTAINS:
+                return actual.contains(value);
+            case STARTS_WITH:
+                return actual.startsWith(value);
+            default:
+                throw new IllegalStateException("Unknown operator " + operator);
+        }
+    }
+
+    /**
+     * Wraps {@code sql} (a query with its own bind parameters) so it returns at most one row, and only when every
+     * expectation holds. Bind the original parameters first, then the expectations with {@link #bindAll}.
+     */
+    public static String existsQuery(String sql, RowLimit rowLimit, WaitExpectation... expectations) {
+        return existsQuery(sql, rowLimit, Arrays.asList(expectations));
+    }
+
+    public static String existsQuery(String sql, RowLimit rowLimit, List<WaitExpectation> expectations) {
+        StringBuilder query = new StringBuilder("SELECT 1 FROM (").append(sql).append(") q");
+        appendConditions(query, expectations);
+        return rowLimit.apply(query.toString());
+    }
+
+    private static void appendConditions(StringBuilder query, List<WaitExpectation> expectations) {
+        for (int i = 0; i < expectations.size(); i++) {
+            query.append(i == 0 ? " WHERE " : " AND ").append(expectations.get(i).condition("q."));
+        }
+    }
+
+    /**
+     * Wraps {@code sql} so it only returns rows where every expectation holds, with all of the original columns.
+     * Bind the original parameters first, then the expectations with {@link #bindAll}.
+     */
+    public static String filterQuery(String sql, List<WaitExpectation> expectations) {
+        StringBuilder query = new StringBuilder("SELECT q.* FROM (").append(sql).append(") q");
+        appendConditions(query, expectations);
+        return query.toString();
+    }
+
+    /**
+     * Binds the expectation values starting at {@code firstIndex}.
+     *
+     * @return the next free parameter index
+     */
+    public static int bindAll(PreparedStatement ps, int firstIndex, List<WaitExpectation> expectations) throws SQLException {
+        int index = firstIndex;
+        for (WaitExpectation expectation : expectations) {
+            ps.setString(index++, expectation.bindValue());
+        }
+        return index;
+    }
+
+    String condition(String qualifier) {
+        String col = qualifier + column;
+        switch (operator) {
+            case EQUALS:
+                return col + " = ?";
+            case EQUALS_IGNORE_CASE:
+                return "UPPER(" + col + ") = UPPER(?)";
+            case NOT_EQUALS:
+                return col + " <> ?";
+            case CONTAINS:
+            case STARTS_WITH:
+                return col + " LIKE ? ESCAPE '" + LIKE_ESCAPE + "'";
+            default:
+                throw new IllegalStateException("Unknown operator " + operator);
+        }
+    }
+
+    String bindValue() {
+        switch (operator) {
+            case CONTAINS:
+                return "%" + escapeLike(value) + "%";
+            case STARTS_WITH:
+                return escapeLike(value) + "%";
+            default:
+                return value;
+        }
+    }
+
+    private static String escapeLike(String raw) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : raw.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                sb.append(LIKE_ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Identity of the expectation for coalescing waits; case-insensitive comparisons ignore the value's case.
+     */
+    String canonical() {
+        String canonicalValue = operator == Operator.EQUALS_IGNORE_CASE ? value.toUpperCase(Locale.ROOT) : value;
+        return column.toUpperCase(Locale.ROOT) + " " + operator + " " + canonicalValue;
+    }
+
+    @Override
+    public String toString() {
+        return column + " " + operator + " " + value;
+    }
+
+    /**
+     * How the database limits a result to one row.
+     */
+    public enum RowLimit {
+        /** Oracle 12c+, PostgreSQL, H2, DB2 */
+        FETCH_FIRST,
+        /** MySQL, MariaDB, SQLite */
+        LIMIT;
+
+        public static RowLimit forConnection(Connection conn) throws SQLException {
+            String product = conn.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+            return product.contains("mysql") || product.contains("mariadb") || product.contains("sqlite")
+                    ? LIMIT : FETCH_FIRST;
+        }
+
+        String apply(String sql) {
+            return this == LIMIT ? sql + " LIMIT 1" : sql + " FETCH FIRST 1 ROWS ONLY";
+        }
+    }
+}
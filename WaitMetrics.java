@@ -0,0 +1,255 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-wait instrumentation for the polling helpers, tagged by table and SQL.
+ * For every wait it records the time until the row became visible, the number of polls, the time spent
+ * in each query and whether the wait timed out or ended on a terminal failure state.
+ * <p>
+ * At JVM shutdown a p50/p95/p99 report is written to the file named by the {@code dbwait.metrics.file}
+ * system property (default {@value #DEFAULT_REPORT_FILE}); a {@code .csv} extension selects CSV, anything
+ * else JSON. Set the property to {@code none} to skip the report.
+ */
+public final class WaitMetrics {
+
+    public static final String REPORT_FILE_PROPERTY = "dbwait.metrics.file";
+    public static final String DEFAULT_REPORT_FILE = "target/db-wait-metrics.json";
+
+    private static final Pattern TABLE_PATTERN =
+            Pattern.compile("\\b(?:FROM|UPDATE|INTO)\\s+([\\w.\"]+)", Pattern.CASE_INSENSITIVE);
+    private static final ConcurrentMap<String, TagMetrics> METRICS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(WaitMetrics::exportAtShutdown, "db-wait-metrics-export"));
+    }
+
+    private WaitMetrics() {
+    }
+
+    /**
+     * Starts recording a wait; the table is taken from the SQL's FROM clause.
+     */
+    public static Wait begin(String sql) {
+        return begin(tableOf(sql), sql);
+    }
+
+    public static Wait begin(String table, String sql) {
+        TagMetrics metrics = METRICS.computeIfAbsent(table + '\u0000' + sql, k -> new TagMetrics(table, sql));
+        return new Wait(metrics);
+    }
+
+    static String tableOf(String sql) {
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        return matcher.find() ? matcher.group(1) : "unknown";
+    }
+
+    /**
+     * Writes the current report as JSON.
+     */
+    public static void exportJson(Path file) throws IOException {
+        createParentDirectories(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("[\n");
+            List<TagMetrics> snapshot = new ArrayList<>(METRICS.values());
+            for (int i = 0; i < snapshot.size(); i++) {
+                TagMetrics m = snapshot.get(i);
+                out.write("  {\"table\": " + jsonString(m.table) + ", \"sql\": " + jsonString(m.sql)
+                        + ", \"waits\": " + m.waits.get() + ", \"timeouts\": " + m.timeouts.get()
+                        + ", \"failures\": " + m.failures.get()
+                        + ",\n   \"visibleMillis\": " + jsonHistogram(m.visibleMillis)
+                        + ",\n   \"polls\": " + jsonHistogram(m.polls)
+                        + ",\n   \"queryMicros\": " + jsonHistogram(m.queryMicros) + "}");
+                out.write(i < snapshot.size() - 1 ? ",\n" : "\n");
+            }
+            out.write("]\n");
+        }
+    }
+
+    /**
+     * Writes the current report as CSV, one row per tag and metric.
+     */
+    public static void exportCsv(Path file) throws IOException {
+        createParentDirectories(file);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("table,sql,metric,waits,timeouts,failures,count,mean,p50,p95,p99,max\n");
+            for (TagMetrics m : METRICS.values()) {
+                writeCsvRow(out, m, "visibleMillis", m.visibleMillis);
+                writeCsvRow(out, m, "polls", m.polls);
+                writeCsvRow(out, m, "queryMicros", m.queryMicros);
+            }
+        }
+    }
+
+    private static void exportAtShutdown() {
+        String reportFile = System.getProperty(REPORT_FILE_PROPERTY, DEFAULT_REPORT_FILE);
+        if (METRICS.isEmpty() || "none".equalsIgnoreCase(reportFile)) {
+            return;
+        }
+        Path file = Paths.get(reportFile);
+        try {
+            if (reportFile.toLowerCase(Locale.ROOT).endsWith(".csv")) {
+                exportCsv(file);
+            } else {
+                exportJson(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write wait metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeCsvRow(Writer out, TagMetrics m, String metric, LatencyHistogram h) throws IOException {
+        out.write(csvField(m.table) + "," + csvField(m.sql) + "," + metric + "," + m.waits.get() + "," + m.timeouts.get()
+                + "," + m.failures.get() + "," + h.count() + "," + String.format(Locale.ROOT, "%.1f", h.mean())
+                + "," + h.percentile(50) + "," + h.percentile(95) + "," + h.percentile(99) + "," + h.max() + "\n");
+    }
+
+    private static String jsonHistogram(LatencyHistogram h) {
+        return "{\"count\": " + h.count() + ", \"mean\": " + String.format(Locale.ROOT, "%.1f", h.mean())
+                + ", \"p50\": " + h.percentile(50) + ", \"p95\": " + h.percentile(95)
+                + ", \"p99\": " + h.percentile(99) + ", \"max\": " + h.max() + "}";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csvField(String value) {
+        return "\"" + value.replace("\"", "\"\"").replaceAll("\\s+", " ") + "\"";
+    }
+
+    private static void createParentDirectories(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * One wait in progress. Wrap the poll check with {@link #timed(Callable)} (or bracket each query with
+     * {@link #startQuery()} / {@link #endQuery(long)}) and call {@link #finish(boolean)} once the wait is over.
+     */
+    public static final class Wait {
+
+        private final TagMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong polls = new AtomicLong();
+        private volatile String dataSource;
+
+        private Wait(TagMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * Names the data source the wait polls, so its {@link PollHistory} is kept apart from the same query's
+         * history on other databases.
+         *
+         * @return this wait
+         */
+        public Wait on(String dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        /**
+         * Counts each call of {@code check} as one poll and records how long it took.
+         */
+        public <T> Callable<T> timed(Callable<T> check) {
+            return () -> {
+                long queryStart = startQuery();
+                try {
+                    return check.call();
+                } finally {
+                    endQuery(queryStart);
+                }
+            };
+        }
+
+        /**
+         * @return start timestamp to pass to {@link #endQuery(long)}
+         */
+        public long startQuery() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Counts one poll and records the time since {@code queryStart}.
+         */
+        public void endQuery(long queryStart) {
+            polls.incrementAndGet();
+            metrics.queryMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queryStart));
+        }
+
+        /**
+         * Also feeds {@link PollHistory}, so {@link LearnedPollStrategy} learns from every instrumented wait: the delay
+         * when the row was found, a censored sample when it timed out.
+         *
+         * @param found true if the row became visible, false if the wait timed out
+         */
+        public void finish(boolean found) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            metrics.waits.incrementAndGet();
+            metrics.polls.record(polls.get());
+            if (found) {
+                metrics.visibleMillis.record(elapsedMillis);
+                PollHistory.record(dataSource, metrics.sql, elapsedMillis);
+            } else {
+                // Only a lower bound on the delay, but it stops the learned timeout from staying too short
+                metrics.timeouts.incrementAndGet();
+                PollHistory.recordTimeout(dataSource, metrics.sql, elapsedMillis);
+            }
+        }
+
+        /**
+         * Ends the wait on a terminal failure state (see {@link TerminalStateException}). Counted separately and
+         * kept out of {@link PollHistory}, since it says nothing about how long rows take to become visible.
+         */
+        public void failed() {
+            metrics.waits.incrementAndGet();
+            metrics.polls.record(polls.get());
+            metrics.failures.incrementAndGet();
+        }
+    }
+
+    private static final class TagMetrics {
+
+        private final String table;
+        private final String sql;
+        private final AtomicLong waits = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final LatencyHistogram visibleMillis = new LatencyHistogram();
+        private final LatencyHistogram polls = new LatencyHistogram();
+        private final LatencyHistogram queryMicros = new LatencyHistogram();
+
+        private TagMetrics(String table, String sql) {
+            this.table = table;
+            this.sql = sql;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package org.example;
+
+import org.awaitility.Awaitility;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Compares the project's ways of waiting for a row against an embedded H2 database.
+ * A background writer commits the target row {@code writeDelayMillis} after each wait starts.
+ * <p>
+ * {@code dbWaitUtil}, {@code streamingRowValidator} and {@code databaseCondition} call the helpers themselves, so
+ * their WaitMetrics, PollHistory and TerminalStateCache bookkeeping is part of what is measured. The other two
+ * helpers cannot be called from here, because DBWaitAndRetryLogic is a fragment and RestAssuredWithDatabaseWaitTest
+ * keeps its check private. Those benchmarks run a copy of the helper's loop and must be kept in step with it.
+ * Every helper polls on the same schedule as the copies. The forked JVM lifts the {@link DbLoadGovernor} limits,
+ * so no wait is throttled, and writes no history or metrics files.
+ * <p>
+ * Reported per benchmark:
+ * <ul>
+ *     <li>score: wall time per wait</li>
+ *     <li>detectionLatencyMillis / waits: time from commit to the wait returning</li>
+ *     <li>queries / waits: SELECTs issued per wait</li>
+ *     <li>cpuMillis / waits: process CPU per wait (includes scheduler and writer threads)</li>
+ *     <li>gc.alloc.rate.norm: bytes allocated per wait (GC profiler, enabled in {@link #main})</li>
+ * </ul>
+ * Compile with jmh-generator-annprocess on the classpath (plus {@code -proc:full} from JDK 23), so javac writes
+ * META-INF/BenchmarkList next to the classes, then run {@link #main} or
+ * <pre>
+ * java -cp classes:dependencies org.openjdk.jmh.Main WaitStrategyBenchmark -prof gc
+ * </pre>
+ * Add {@code -wi 1 -w 1s -i 1 -r 2s -p writeDelayMillis=30} for a quick check that every benchmark still runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-D" + DbLoadGovernor.MAX_CONCURRENT_PROPERTY + "=1000000",
+        "-D" + DbLoadGovernor.QUERIES_PER_SECOND_PROPERTY + "=1e12",
+        "-D" + PollHistory.HISTORY_FILE_PROPERTY + "=none",
+        "-D" + WaitMetrics.REPORT_FILE_PROPERTY + "=none"})
+@State(Scope.Benchmark)
+public class WaitStrategyBenchmark {
+
+    private static final String DB_URL = "jdbc:h2:mem:wait_bench;DB_CLOSE_DELAY=-1";
+    // Same database through a driver that counts the queries the waiters run
+    private static final String COUNTED_URL = CountingDriver.PREFIX + DB_URL.substring("jdbc:".length());
+    private static final String SELECT_CLNT_DTL_SQL = "SELECT CLNT_ID, CLNT_STAT FROM CLIENT_DETAILS WHERE CLNT_ID = ?";
+    private static final String COUNT_CLNT_DTL_SQL = "SELECT COUNT(*) FROM CLIENT_DETAILS WHERE CLNT_ID = ?";
+    private static final String INSERT_CLNT_DTL_SQL = "INSERT INTO CLIENT_DETAILS (CLNT_ID, CLNT_STAT) VALUES (?, ?)";
+    private static final String EXPECTED_STATUS = "ONBOARDED";
+    private static final long MAX_WAIT_MILLIS = 30000;
+
+    // Same schedules the helpers use today
+    private static final PollStrategy CLIENT_DETAILS_POLL_STRATEGY =
+            PollStrategy.fastStartThenDecay(Duration.ofMillis(100), 5, Duration.ofMillis(2000));
+    private static final PollStrategy FRAMEWORK_POLL_STRATEGY =
+            PollStrategy.exponentialWithJitter(Duration.ofMillis(100), Duration.ofSeconds(2), 2.0, 0.2);
+
+    private static final AtomicLong QUERY_COUNT = new AtomicLong();
+
+    static {
+        try {
+            DriverManager.registerDriver(new CountingDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"0", "30", "500"})
+    public long writeDelayMillis;
+
+    private final AtomicLong keySequence = new AtomicLong();
+    private final ApiDatabaseTestFramework framework = new ApiDatabaseTestFramework();
+    private final StreamingRowValidator clientDetails = StreamingRowValidator.builder(SELECT_CLNT_DTL_SQL)
+            .capture("CLNT_ID", "CLNT_STAT")
+            .expect(WaitExpectation.equalTo("CLNT_STAT", EXPECTED_STATUS))
+            .build();
+    private ScheduledExecutorService writer;
+    private Connection writerConn;
+    private Connection waiterConn;
+    private DbConnectionPool waiterPool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        writerConn = DriverManager.getConnection(DB_URL);
+        try (Statement stmt = writerConn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS CLIENT_DETAILS (CLNT_ID VARCHAR(64) PRIMARY KEY, CLNT_STAT VARCHAR(32))");
+        }
+        waiterConn = DriverManager.getConnection(COUNTED_URL);
+        waiterPool = new DbConnectionPool(COUNTED_URL, "", "", 4);
+        writer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        writer.shutdownNow();
+        waiterPool.close();
+        waiterConn.close();
+        writerConn.close();
+    }
+
+    /**
+     * Per-thread counters reported next to the score; divide by {@code waits} for per-wait figures.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WaitCounters {
+        public long waits;
+        public long queries;
+        public long detectionLatencyMillis;
+        public long cpuMillis;
+    }
+
+    /**
+     * Newfile.waitForClientData: {@link StreamingRowValidator#await}.
+     */
+    @Benchmark
+    public boolean streamingRowValidator(WaitCounters counters) throws Exception {
+        return measure(counters, key -> clientDetails.await(waiterConn, Duration.ofMillis(MAX_WAIT_MILLIS),
+                CLIENT_DETAILS_POLL_STRATEGY, key).matched());
+    }
+
+    /**
+     * Copy of DBWaitAndRetryLogic.validateClientOnboarding: {@code while (!resultSet.next())} around a re-executed,
+     * governed statement.
+     */
+    @Benchmark
+    public boolean resultSetNextLoop(WaitCounters counters) throws Exception {
+        return measure(counters, key -> {
+            // The helper's statement lives as long as its connection, which it closes on return
+            try (PreparedStatement ps = waiterConn.prepareStatement(SELECT_CLNT_DTL_SQL)) {
+                ps.setString(1, key);
+                long startTime = System.currentTimeMillis();
+                int attempt = 0;
+                String dataSource = DbLoadGovernor.dataSourceOf(waiterConn);
+                WaitMetrics.Wait metrics = WaitMetrics.begin(SELECT_CLNT_DTL_SQL).on(dataSource);
+                long queryStart = metrics.startQuery();
+                ResultSet resultSet = executeGoverned(ps, dataSource, startTime + MAX_WAIT_MILLIS);
+                while (!resultSet.next()) {
+                    resultSet.close(); // Every retry opens a new cursor, so release this one first
+                    metrics.endQuery(queryStart);
+                    if (System.currentTimeMillis() - startTime >= MAX_WAIT_MILLIS) {
+                        metrics.finish(false);
+                        return false;
+                    }
+                    CLIENT_DETAILS_POLL_STRATEGY.sleepBeforeNextPoll(++attempt, startTime + MAX_WAIT_MILLIS);
+                    queryStart = metrics.startQuery();
+                    resultSet = executeGoverned(ps, dataSource, startTime + MAX_WAIT_MILLIS);
+                }
+                metrics.endQuery(queryStart);
+                metrics.finish(true);
+                resultSet.close();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Copy of RestAssuredWithDatabaseWaitTest: Awaitility with its default 100 ms poll interval, checking with a
+     * pooled connection and cached statement.
+     */
+    @Benchmark
+    public boolean awaitility(WaitCounters counters) throws Exception {
+        return measure(counters, key -> {
+            Awaitility.await()
+                    .atMost(Duration.ofMillis(MAX_WAIT_MILLIS))
+                    .until(() -> isDataInDatabase(key));
+            return true;
+        });
+    }
+
+    /**
+     * {@link DbWaitUtil#waitForRecord(Connection, String, String, String, String, PollStrategy)}.
+     */
+    @Benchmark
+    public boolean dbWaitUtil(WaitCounters counters) throws Exception {
+        return measure(counters, key -> {
+            DbWaitUtil.waitForRecord(waiterConn, SELECT_CLNT_DTL_SQL, key, "CLNT_STAT", EXPECTED_STATUS,
+                    CLIENT_DETAILS_POLL_STRATEGY);
+            return true;
+        });
+    }
+
+    /**
+     * ApiDatabaseTestFramework.waitForDatabaseCondition with a pooled count query, as waitForUserInDatabase uses it.
+     */
+    @Benchmark
+    public boolean databaseCondition(WaitCounters counters) throws Exception {
+        return measure(counters, key -> framework.waitForDatabaseCondition(COUNT_CLNT_DTL_SQL, () -> {
+            try {
+                return isDataInDatabase(key);
+            } catch (SQLException e) {
+                return false;
+            }
+        }, Duration.ofMillis(MAX_WAIT_MILLIS), FRAMEWORK_POLL_STRATEGY));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WaitStrategyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    private boolean measure(WaitCounters counters, Wait wait) throws Exception {
+        String key = "BENCH-" + keySequence.incrementAndGet();
+        ScheduledFuture<Long> committedAt = writer.schedule(() -> {
+            insertRow(key);
+            return System.nanoTime();
+        }, writeDelayMillis, TimeUnit.MILLISECONDS);
+
+        long queriesBefore = QUERY_COUNT.get();
+        long cpuBefore = processCpuNanos();
+        boolean found = wait.await(key);
+        long detectedAt = System.nanoTime();
+
+        counters.waits++;
+        counters.queries += QUERY_COUNT.get() - queriesBefore;
+        counters.cpuMillis += TimeUnit.NANOSECONDS.toMillis(processCpuNanos() - cpuBefore);
+        // The waiter can see the row a moment before the writer takes its timestamp; count that as zero
+        long commitNanos = committedAt.get();
+        counters.detectionLatencyMillis += TimeUnit.NANOSECONDS.toMillis(Math.max(0, detectedAt - commitNanos));
+        return found;
+    }
+
+    private boolean isDataInDatabase(String key) throws SQLException {
+        try (DbConnectionPool.Lease lease = waiterPool.lease()) {
+            PreparedStatement ps = lease.prepare(COUNT_CLNT_DTL_SQL);
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static ResultSet executeGoverned(PreparedStatement ps, String dataSource, long deadlineMillis)
+            throws SQLException, InterruptedException {
+        DbLoadGovernor.Permit permit;
+        try {
+            permit = DbLoadGovernor.acquire(dataSource, deadlineMillis);
+        } catch (TimeoutException e) {
+            throw new SQLException("Timeout: no query permit before the deadline", e);
+        }
+        try {
+            return ps.executeQuery();
+        } finally {
+            permit.close();
+        }
+    }
+
+    private void insertRow(String key) {
+        try (PreparedStatement ps = writerConn.prepareStatement(INSERT_CLNT_DTL_SQL)) {
+            ps.setString(1, key);
+            ps.setString(2, EXPECTED_STATUS);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Benchmark writer failed", e);
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    /**
+     * Opens {@code jdbc:counted:} URLs as the underlying {@code jdbc:} URL, with every executeQuery counted.
+     */
+    private static final class CountingDriver implements Driver {
+
+        private static final String PREFIX = "jdbc:counted:";
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            return countingConnection(DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info),
+                    QUERY_COUNT);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    /**
+     * Wraps a connection so every executeQuery on its prepared statements is counted.
+     */
+    private static Connection countingConnection(Connection target, AtomicLong queryCount) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    if (result instanceof PreparedStatement) {
+                        PreparedStatement statement = (PreparedStatement) result;
+                        InvocationHandler counting = (p, m, a) -> {
+                            if ("executeQuery".equals(m.getName())) {
+                                queryCount.incrementAndGet();
+                            }
+                            return invoke(statement, m, a);
+                        };
+                        return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                new Class<?>[]{PreparedStatement.class}, counting);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Wait {
+        boolean await(String key) throws Exception;
+    }
+}
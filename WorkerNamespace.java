@@ -0,0 +1,173 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps tests that run in parallel (TestNG {@code parallel="methods"}) out of each other's data. Every worker
+ * thread gets a number on first use, and with it:
+ * <ul>
+ *   <li>a key namespace: {@link #key(String)} turns "ORD123" into e.g. "ORD123-k3f9w2" (run id, worker number),
+ *       so entities created through the API never share a key with another worker or an earlier run;</li>
+ *   <li>private tables: {@link #isolateTable(Connection, String)} creates an empty copy of a table for this worker,
+ *       e.g. CLIENT_DETAILS_W2, for tests that alter or empty a table. While it is registered, the SQL given to
+ *       {@link DbWaitUtil}, {@link StreamingRowValidator} and {@link ExpectationPlan} on this thread is rewritten to
+ *       use the copy.</li>
+ * </ul>
+ * Both are per thread, so call them on the test thread, not inside callbacks that run on the poll scheduler.
+ * <pre>
+ * String orderId = WorkerNamespace.key("ORD123");
+ * String clientDetails = WorkerNamespace.isolateTable(conn, "CLIENT_DETAILS");
+ * try {
+ *     // test logic; "SELECT ... FROM CLIENT_DETAILS" in helper queries now reads clientDetails
+ * } finally {
+ *     WorkerNamespace.release(conn);
+ * }
+ * </pre>
+ */
+public final class WorkerNamespace {
+
+    // Four base-36 digits of the start time; enough to tell consecutive runs apart
+    private static final String RUN_ID = Long.toString(System.currentTimeMillis() / 1000 % 1_679_616L, 36);
+    private static final AtomicInteger WORKERS = new AtomicInteger();
+    private static final ThreadLocal<Worker> CURRENT = ThreadLocal.withInitial(() -> new Worker(WORKERS.incrementAndGet()));
+
+    private WorkerNamespace() {
+    }
+
+    /**
+     * Number of the calling worker thread, starting at 1.
+     */
+    public static int workerId() {
+        return CURRENT.get().id;
+    }
+
+    /**
+     * Suffix shared by every key this worker creates in this run.
+     */
+    public static String namespace() {
+        return RUN_ID + "w" + workerId();
+    }
+
+    /**
+     * {@code base} in this worker's namespace; the same base always gives the same key on the same worker.
+     */
+    public static String key(String base) {
+        return base + "-" + namespace();
+    }
+
+    /**
+     * Creates (or recreates) an empty copy of {@code table} for this worker and routes helper queries on this
+     * thread to it until {@link #release}. Runs DDL, so call it before opening a {@link DbFixture} on the connection.
+     * <p>
+     * The copy has the table's columns only: no indexes, constraints, triggers or defaults. An ALTER on the copy
+     * therefore does not show how long it locks the real table, or whether an index or constraint rejects it; a test
+     * that depends on those must create them on the copy itself.
+     *
+     * @return name of the copy, e.g. CLIENT_DETAILS_W2
+     */
+    public static String isolateTable(Connection conn, String table) throws SQLException {
+        String source = WaitExpectation.requireTableName(table);
+        String copy = source + "_W" + workerId();
+        dropIfExists(conn, copy);
+        try (Statement stmt = conn.createStatement()) {
+            // Columns only; see the method doc
+            stmt.executeUpdate("CREATE TABLE " + copy + " AS SELECT * FROM " + source + " WHERE 1 = 0");
+        }
+        CURRENT.get().tables.put(source, copy);
+        return copy;
+    }
+
+    /**
+     * This worker's copy of {@code table}, or {@code table} itself when it is not isolated.
+     */
+    public static String table(String table) {
+        String copy = CURRENT.get().tables.get(table);
+        return copy == null ? table : copy;
+    }
+
+    /**
+     * {@code sql} with every isolated table name replaced by this worker's copy. Returns {@code sql} unchanged when
+     * the worker has no isolated tables.
+     */
+    public static String rewrite(String sql) {
+        Map<String, String> tables = CURRENT.get().tables;
+        if (tables.isEmpty()) {
+            return sql;
+        }
+        String rewritten = sql;
+        for (Map.Entry<String, String> table : tables.entrySet()) {
+            // Whole identifiers only, so CLIENT_DETAILS_W2 and CLIENT_DETAILS_ARCHIVE are left alone
+            Pattern name = Pattern.compile("(?<![\\w.$])" + Pattern.quote(table.getKey()) + "(?![\\w$])",
+                    Pattern.CASE_INSENSITIVE);
+            rewritten = name.matcher(rewritten).replaceAll(Matcher.quoteReplacement(table.getValue()));
+        }
+        return rewritten;
+    }
+
+    /**
+     * Drops this worker's table copies, with their {@link TerminalStateCache} entries, and stops rewriting; every
+     * drop is attempted, the first failure is thrown.
+     */
+    public static void release(Connection conn) throws SQLException {
+        Map<String, String> tables = CURRENT.get().tables;
+        SQLException failure = null;
+        for (String copy : tables.values()) {
+            TerminalStateCache.invalidateTable(copy);
+            try {
+                dropIfExists(conn, copy);
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        tables.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void dropIfExists(Connection conn, String table) throws SQLException {
+        if (tableExists(conn, table)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DROP TABLE " + table);
+            }
+        }
+    }
+
+    static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        // Unquoted names are stored upper case by most databases and lower case by PostgreSQL
+        for (String name : new String[] {table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), conn.getSchema(), name, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Worker {
+
+        private final int id;
+        // Keyed case-insensitively, like unquoted SQL identifiers
+        private final Map<String, String> tables = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        private Worker(int id) {
+            this.id = id;
+        }
+    }
+}